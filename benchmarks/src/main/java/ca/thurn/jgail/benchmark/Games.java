@@ -0,0 +1,88 @@
+package ca.thurn.jgail.benchmark;
+
+import java.util.Arrays;
+
+import ca.thurn.jgail.connect4.C4State;
+import ca.thurn.jgail.core.Seedable;
+import ca.thurn.jgail.core.State;
+import ca.thurn.jgail.core.State.ActionIterator;
+import ca.thurn.jgail.ingenious.IngeniousState;
+import ca.thurn.jgail.tictactoe.TicTacToeState;
+
+/**
+ * Fixed game positions for benchmarks. Positions are generated by playing
+ * seeded random actions from the starting position, so every run of a
+ * benchmark measures exactly the same positions.
+ */
+final class Games {
+
+  private Games() {
+  }
+
+  /**
+   * @param game One of "tictactoe", "connect4" or "ingenious".
+   * @return A new, null-initialized state for this game.
+   */
+  static State newState(String game) {
+    switch (game) {
+      case "tictactoe":
+        return new TicTacToeState();
+      case "connect4":
+        return new C4State();
+      case "ingenious":
+        return new IngeniousState();
+      default:
+        throw new IllegalArgumentException("Unknown game " + game);
+    }
+  }
+
+  /**
+   * @param game One of "tictactoe", "connect4" or "ingenious".
+   * @param index Index of the position in the game's catalogue of
+   *     positions. Distinct indices give distinct positions.
+   * @return A non-terminal position from the middle of a game, whose source
+   *     of randomness has been seeded.
+   */
+  static State midGamePosition(String game, int index) {
+    int numActions;
+    switch (game) {
+      case "tictactoe":
+        numActions = 3;
+        break;
+      case "connect4":
+        numActions = 12;
+        break;
+      default:
+        numActions = 16;
+    }
+    for (long seed = index * 1000L; ; ++seed) {
+      State state = newState(game);
+      ((Seedable)state).setSeed(seed);
+      state.setToStartingConditions();
+      for (int i = 0; i < numActions && !state.isTerminal(); ++i) {
+        state.perform(state.getRandomAction());
+      }
+      if (!state.isTerminal()) {
+        ((Seedable)state).setSeed(seed);
+        return state;
+      }
+    }
+  }
+
+  /**
+   * @param state A state.
+   * @return Every action available from this state.
+   */
+  static long[] actions(State state) {
+    long[] result = new long[16];
+    int count = 0;
+    ActionIterator iterator = state.getActionIterator();
+    while (iterator.hasNextAction()) {
+      if (count == result.length) {
+        result = Arrays.copyOf(result, count * 2);
+      }
+      result[count++] = iterator.nextAction();
+    }
+    return Arrays.copyOf(result, count);
+  }
+}
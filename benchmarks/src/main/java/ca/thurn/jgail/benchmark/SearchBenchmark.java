@@ -0,0 +1,170 @@
+package ca.thurn.jgail.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ca.thurn.jgail.algorithm.MonteCarloSearch;
+import ca.thurn.jgail.algorithm.NegamaxSearch;
+import ca.thurn.jgail.algorithm.UctSearch;
+import ca.thurn.jgail.core.ActionScore;
+import ca.thurn.jgail.core.WinLossEvaluator;
+
+/**
+ * End-to-end benchmarks of the search agents' blocking searches with fixed
+ * budgets. Each invocation searches the next position from a small catalogue
+ * of fixed mid-game positions for the game.
+ *
+ * <p>The UCT and Monte Carlo benchmarks count each simulation as an
+ * operation, so their score is simulations per second and the GC profiler's
+ * normalized allocation rate is bytes allocated per simulation. Their nodes
+ * counter is the rate at which simulations visit nodes, including the
+ * actions played out past the end of the game tree. The UCT benchmark's
+ * treeNodes counter is the rate at which game tree nodes are created, so
+ * dividing it by the score gives the number of nodes created per simulation.
+ * The Negamax benchmark counts each search as an operation, and its nodes
+ * counter is nodes visited per second. Every agent is seeded, so each run
+ * does the same work.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class SearchBenchmark {
+
+  /**
+   * Number of simulations in each UCT and Monte Carlo search.
+   */
+  static final int SIMULATIONS = 2000;
+
+  /**
+   * Number of positions in each game's catalogue.
+   */
+  static final int NUM_POSITIONS = 4;
+
+  /**
+   * Number of nodes visited and game tree nodes created by UCT searches,
+   * reported by JMH as rates per second.
+   */
+  @AuxCounters(AuxCounters.Type.OPERATIONS)
+  @State(Scope.Thread)
+  public static class TreeCounters {
+    public long nodes;
+    public long treeNodes;
+
+    @Setup(Level.Iteration)
+    public void reset() {
+      nodes = 0;
+      treeNodes = 0;
+    }
+  }
+
+  /**
+   * Number of nodes visited by Monte Carlo and Negamax searches, reported by
+   * JMH as a rate per second.
+   */
+  @AuxCounters(AuxCounters.Type.OPERATIONS)
+  @State(Scope.Thread)
+  public static class NodeCounters {
+    public long nodes;
+
+    @Setup(Level.Iteration)
+    public void reset() {
+      nodes = 0;
+    }
+  }
+
+  @Param({"tictactoe", "connect4", "ingenious"})
+  public String game;
+
+  private ca.thurn.jgail.core.State[] positions;
+  private int nextPosition;
+  private UctSearch uctSearch;
+  private MonteCarloSearch monteCarloSearch;
+  private NegamaxSearch negamaxSearch;
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    positions = new ca.thurn.jgail.core.State[NUM_POSITIONS];
+    for (int i = 0; i < NUM_POSITIONS; ++i) {
+      positions[i] = Games.midGamePosition(game, i);
+    }
+    uctSearch = UctSearch.builder(Games.newState(game))
+        .setNumSimulations(SIMULATIONS)
+        .build();
+    uctSearch.setSeed(1L);
+    monteCarloSearch = MonteCarloSearch.builder(Games.newState(game))
+        .setNumSimulations(SIMULATIONS)
+        .build();
+    monteCarloSearch.setSeed(1L);
+    negamaxSearch = NegamaxSearch.builder(Games.newState(game))
+        .setSearchDepth(searchDepth(game))
+        .setEvaluator(new WinLossEvaluator())
+        .build();
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(SIMULATIONS)
+  public ActionScore uctSearch(TreeCounters counters) {
+    ca.thurn.jgail.core.State position = nextPosition();
+    ActionScore result = uctSearch.pickActionBlocking(position.getCurrentPlayer(), position);
+    counters.nodes += uctSearch.getLastSearchStats().getNumNodes();
+    counters.treeNodes += uctSearch.getLastSearchStats().getTreeSize();
+    return result;
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(SIMULATIONS)
+  public ActionScore monteCarloSearch(NodeCounters counters) {
+    ca.thurn.jgail.core.State position = nextPosition();
+    ActionScore result =
+        monteCarloSearch.pickActionBlocking(position.getCurrentPlayer(), position);
+    counters.nodes += monteCarloSearch.getLastSearchStats().getNumNodes();
+    return result;
+  }
+
+  @Benchmark
+  public ActionScore negamaxSearch(NodeCounters counters) {
+    ca.thurn.jgail.core.State position = nextPosition();
+    ActionScore result = negamaxSearch.pickActionBlocking(position.getCurrentPlayer(), position);
+    counters.nodes += negamaxSearch.getNumNodes();
+    return result;
+  }
+
+  private ca.thurn.jgail.core.State nextPosition() {
+    ca.thurn.jgail.core.State result = positions[nextPosition];
+    nextPosition = (nextPosition + 1) % NUM_POSITIONS;
+    return result;
+  }
+
+  /**
+   * @param game A game name.
+   * @return The Negamax search depth to use for this game, chosen so that a
+   *     search takes on the order of milliseconds.
+   */
+  private static int searchDepth(String game) {
+    switch (game) {
+      case "tictactoe":
+        return 9;
+      case "connect4":
+        return 6;
+      default:
+        return 2;
+    }
+  }
+}
@@ -0,0 +1,101 @@
+package ca.thurn.jgail.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ca.thurn.jgail.core.State.ActionIterator;
+
+/**
+ * Microbenchmarks for the basic operations of each bundled game's state
+ * representation, measured on a fixed mid-game position. Run with the GC
+ * profiler (as the benchmarks project's jmh task does) to see the
+ * allocation rate of each operation.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class StateBenchmark {
+
+  @Param({"tictactoe", "connect4", "ingenious"})
+  public String game;
+
+  private ca.thurn.jgail.core.State state;
+  private ca.thurn.jgail.core.State target;
+  private long[] actions;
+  private int nextAction;
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    state = Games.midGamePosition(game, 0);
+    target = state.copy();
+    actions = Games.actions(state);
+  }
+
+  /**
+   * Performs and then undoes each action from the position in turn.
+   */
+  @Benchmark
+  public int performUndo() {
+    long action = actions[nextAction];
+    nextAction = nextAction + 1 == actions.length ? 0 : nextAction + 1;
+    long undoToken = state.perform(action);
+    int player = state.getCurrentPlayer();
+    state.undo(action, undoToken);
+    return player;
+  }
+
+  @Benchmark
+  public ca.thurn.jgail.core.State copy() {
+    return state.copy();
+  }
+
+  @Benchmark
+  public ca.thurn.jgail.core.State initializeFrom() {
+    return target.initializeFrom(state);
+  }
+
+  /**
+   * Iterates over every action available from the position.
+   */
+  @Benchmark
+  public long actionIterator() {
+    long sum = 0;
+    ActionIterator iterator = state.getActionIterator();
+    while (iterator.hasNextAction()) {
+      sum += iterator.nextAction();
+    }
+    return sum;
+  }
+
+  @Benchmark
+  public long getRandomAction() {
+    return state.getRandomAction();
+  }
+
+  /**
+   * Plays random actions from a copy of the position until the game ends.
+   */
+  @Benchmark
+  public int randomPlayout() {
+    ca.thurn.jgail.core.State playout = state.copy();
+    while (!playout.isTerminal()) {
+      playout.perform(playout.getRandomAction());
+    }
+    return playout.getWinner();
+  }
+}
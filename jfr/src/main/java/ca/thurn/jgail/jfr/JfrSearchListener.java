@@ -0,0 +1,74 @@
+package ca.thurn.jgail.jfr;
+
+import ca.thurn.jgail.core.Agent;
+import ca.thurn.jgail.core.SearchListener;
+import ca.thurn.jgail.core.SearchStats;
+import ca.thurn.jgail.core.State;
+
+/**
+ * A {@link SearchListener} which emits Java Flight Recorder events, so that
+ * slow or poor searches can be diagnosed from a recording of a running
+ * process. Agents built with this listener emit a
+ * "ca.thurn.jgail.SearchStarted" and a "ca.thurn.jgail.SearchFinished" event
+ * for every search, and a "ca.thurn.jgail.SearchIteration" event for each
+ * iteration their search reports. When no recording has these events
+ * enabled, the listener does no more than check whether they are enabled.
+ * Safe for use by multiple threads.
+ */
+public class JfrSearchListener implements SearchListener {
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void searchStarted(Agent agent, State root) {
+    SearchStartedEvent event = new SearchStartedEvent();
+    if (event.shouldCommit()) {
+      event.agent = agent.toString();
+      event.agentId = System.identityHashCode(agent);
+      event.root = root.toString();
+      event.commit();
+    }
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void iterationCompleted(Agent agent, int iteration, SearchStats stats) {
+    SearchIterationEvent event = new SearchIterationEvent();
+    if (event.shouldCommit()) {
+      event.agentId = System.identityHashCode(agent);
+      event.iteration = iteration;
+      event.simulations = stats.getNumSimulations();
+      event.nodes = stats.getNumNodes();
+      event.maxDepth = stats.getMaxDepth();
+      event.treeExpansions = stats.getTreeSize();
+      event.evaluations = stats.getNumEvaluations();
+      event.cutoffs = stats.getNumCutoffs();
+      event.elapsed = stats.getElapsedNanos();
+      event.allocated = stats.getAllocatedBytes();
+      event.commit();
+    }
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void searchFinished(Agent agent, SearchStats stats) {
+    SearchFinishedEvent event = new SearchFinishedEvent();
+    if (event.shouldCommit()) {
+      event.agentId = System.identityHashCode(agent);
+      event.simulations = stats.getNumSimulations();
+      event.nodes = stats.getNumNodes();
+      event.maxDepth = stats.getMaxDepth();
+      event.treeSize = stats.getTreeSize();
+      event.evaluations = stats.getNumEvaluations();
+      event.cutoffs = stats.getNumCutoffs();
+      event.elapsed = stats.getElapsedNanos();
+      event.allocated = stats.getAllocatedBytes();
+      event.commit();
+    }
+  }
+}
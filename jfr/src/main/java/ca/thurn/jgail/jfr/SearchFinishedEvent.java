@@ -0,0 +1,51 @@
+package ca.thurn.jgail.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * Flight Recorder event for the end of a search, carrying its
+ * {@link ca.thurn.jgail.core.SearchStats}.
+ */
+@Name("ca.thurn.jgail.SearchFinished")
+@Label("Search Finished")
+@Category({"JGAIL", "Search"})
+@Description("An agent finished searching for an action")
+@StackTrace(false)
+class SearchFinishedEvent extends Event {
+  @Label("Agent ID")
+  int agentId;
+
+  @Label("Simulations")
+  long simulations;
+
+  @Label("Nodes")
+  long nodes;
+
+  @Label("Maximum Depth")
+  int maxDepth;
+
+  @Label("Tree Size")
+  @Description("Game tree nodes created")
+  long treeSize;
+
+  @Label("Evaluator Calls")
+  long evaluations;
+
+  @Label("Cutoffs")
+  long cutoffs;
+
+  @Label("Elapsed Time")
+  @Timespan(Timespan.NANOSECONDS)
+  long elapsed;
+
+  @Label("Allocated")
+  @DataAmount(DataAmount.BYTES)
+  long allocated;
+}
@@ -0,0 +1,58 @@
+package ca.thurn.jgail.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * Flight Recorder event for a completed iteration of a search: a depth of
+ * iterative deepening, or a batch of simulations run by one thread. Tree
+ * expansions and evaluator calls are too frequent to record individually, so
+ * each event carries the running totals for its thread's share of the
+ * search instead.
+ */
+@Name("ca.thurn.jgail.SearchIteration")
+@Label("Search Iteration")
+@Category({"JGAIL", "Search"})
+@Description("A search completed a depth of iterative deepening or a batch of simulations")
+@StackTrace(false)
+class SearchIterationEvent extends Event {
+  @Label("Agent ID")
+  int agentId;
+
+  @Label("Iteration")
+  @Description("Depth completed, or number of batches of simulations completed")
+  int iteration;
+
+  @Label("Simulations")
+  long simulations;
+
+  @Label("Nodes")
+  long nodes;
+
+  @Label("Maximum Depth")
+  int maxDepth;
+
+  @Label("Tree Expansions")
+  @Description("Game tree nodes created")
+  long treeExpansions;
+
+  @Label("Evaluator Calls")
+  long evaluations;
+
+  @Label("Cutoffs")
+  long cutoffs;
+
+  @Label("Elapsed Time")
+  @Timespan(Timespan.NANOSECONDS)
+  long elapsed;
+
+  @Label("Allocated")
+  @DataAmount(DataAmount.BYTES)
+  long allocated;
+}
@@ -0,0 +1,29 @@
+package ca.thurn.jgail.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight Recorder event for the start of a search.
+ */
+@Name("ca.thurn.jgail.SearchStarted")
+@Label("Search Started")
+@Category({"JGAIL", "Search"})
+@Description("An agent began searching for an action")
+@StackTrace(false)
+class SearchStartedEvent extends Event {
+  @Label("Agent")
+  @Description("The agent's configuration")
+  String agent;
+
+  @Label("Agent ID")
+  @Description("Identifies the agent in the other search events")
+  int agentId;
+
+  @Label("Root State")
+  String root;
+}
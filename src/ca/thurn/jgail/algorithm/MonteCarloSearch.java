@@ -2,11 +2,16 @@ package ca.thurn.jgail.algorithm;
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Random;
 
 import ca.thurn.jgail.core.ActionScore;
 import ca.thurn.jgail.core.Agent;
 import ca.thurn.jgail.core.AsynchronousAgent;
 import ca.thurn.jgail.core.Evaluator;
+import ca.thurn.jgail.core.Instrumented;
+import ca.thurn.jgail.core.SearchListener;
+import ca.thurn.jgail.core.SearchStats;
+import ca.thurn.jgail.core.Seedable;
 import ca.thurn.jgail.core.State;
 import ca.thurn.jgail.core.WinLossEvaluator;
 
@@ -14,7 +19,7 @@ import ca.thurn.jgail.core.WinLossEvaluator;
  * An agent which picks actions by running repeated random simulations from
  * the current state and returning the one that had the best average outcome.
  */
-public class MonteCarloSearch implements Agent, AsynchronousAgent {
+public class MonteCarloSearch implements Agent, AsynchronousAgent, Instrumented, Seedable {
   
   /**
    * Builder for MonteCarloSearch.
@@ -34,12 +39,14 @@ public class MonteCarloSearch implements Agent, AsynchronousAgent {
     
     private Evaluator evaluator = new WinLossEvaluator();
     
+    private SearchListener searchListener = null;
+    
     /**
      * @return A new MonteCarloSearch instance.
      */
     public MonteCarloSearch build() {
       return new MonteCarloSearch(stateRepresentation, numSimulations, discountRate, maxDepth,
-          evaluator);
+          evaluator, searchListener);
     }
 
     /**
@@ -86,6 +93,18 @@ public class MonteCarloSearch implements Agent, AsynchronousAgent {
       this.evaluator = evaluator;
       return this;
     }
+    
+    /**
+     * @param searchListener Listener to notify about the progress of
+     *     searches, or null. An iteration is reported after every
+     *     {@link SearchListener#SIMULATIONS_PER_ITERATION} simulations.
+     *     Default value: null.
+     * @return this.
+     */
+    public Builder setSearchListener(SearchListener searchListener) {
+      this.searchListener = searchListener;
+      return this;
+    }
   }
   
   /**
@@ -101,7 +120,13 @@ public class MonteCarloSearch implements Agent, AsynchronousAgent {
   private final double discountRate;
   private final int maxDepth;
   private final Evaluator evaluator;
+  // Null if there is no listener.
+  private final SearchListener searchListener;
+  // Source of the seeds for the state copied for each simulation.
+  private final Random random = new Random();
   private volatile ActionScore asyncResult;
+  private volatile SearchStats lastSearchStats = SearchStats.EMPTY;
+  private SearchStats searchStats = SearchStats.EMPTY;
   private Thread workerThread;
   
   /**
@@ -111,14 +136,16 @@ public class MonteCarloSearch implements Agent, AsynchronousAgent {
    * @param numSimulations
    * @param maxDepth
    * @param evaluator
+   * @param searchListener
    */
   private MonteCarloSearch(State stateRepresentation, int numSimulations, double discountRate,
-      int maxDepth, Evaluator evaluator) {
+      int maxDepth, Evaluator evaluator, SearchListener searchListener) {
     this.stateRepresentation = stateRepresentation;
     this.numSimulations = numSimulations;
     this.discountRate = discountRate;
     this.maxDepth = maxDepth;
     this.evaluator = evaluator;
+    this.searchListener = searchListener;
   }
 
   /**
@@ -134,8 +161,14 @@ public class MonteCarloSearch implements Agent, AsynchronousAgent {
    */
   @Override
   public ActionScore pickActionBlocking(int player, State root) {
+    Counters counters = new Counters();
+    if (searchListener != null) {
+      searchListener.searchStarted(this, root);
+    }
     Map<Long, Double> actionRewards = new HashMap<Long, Double>(); 
-    return runSimulations(player, root, actionRewards, numSimulations);
+    ActionScore result = runSimulations(player, root, actionRewards, numSimulations, counters);
+    recordStats(counters);
+    return result;
   }
 
   /**
@@ -146,16 +179,22 @@ public class MonteCarloSearch implements Agent, AsynchronousAgent {
     workerThread = (new Thread() {
       @Override
       public void run() {
+        Counters counters = new Counters();
+        if (searchListener != null) {
+          searchListener.searchStarted(MonteCarloSearch.this, root);
+        }
         Map<Long, Double> actionRewards = new HashMap<Long, Double>();
         int simulationCount = 0;
         // Allow for fine-grained control over the number of simulations.
         int simulationIncrement = numSimulations > 1000 ? 1000 : 1; 
         while (!isInterrupted()) {
           if (simulationCount < numSimulations) {
-            asyncResult = runSimulations(player, root, actionRewards, simulationIncrement);
+            asyncResult = runSimulations(player, root, actionRewards, simulationIncrement,
+                counters);
             simulationCount += simulationIncrement;
           }
         }
+        recordStats(counters);
       }
     });
     workerThread.start();
@@ -171,6 +210,36 @@ public class MonteCarloSearch implements Agent, AsynchronousAgent {
     return asyncResult;
   }
   
+  /**
+   * {@inheritDoc} Each simulation's copy of the root state is seeded from
+   * this agent's source of randomness, if the state is Seedable. Combined
+   * with a seeded root state, this makes blocking searches reproducible.
+   */
+  @Override
+  public void setSeed(long seed) {
+    random.setSeed(seed);
+  }
+  
+  /**
+   * {@inheritDoc} The number of nodes is the number of actions performed by
+   * simulations, the maximum depth is the length of the longest simulation,
+   * and the number of cutoffs is the number of simulations stopped by the
+   * maximum depth. The statistics for an asynchronous search are recorded
+   * when its thread stops, shortly after its result is requested.
+   */
+  @Override
+  public SearchStats getLastSearchStats() {
+    return lastSearchStats;
+  }
+  
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public synchronized SearchStats getSearchStats() {
+    return searchStats;
+  }
+  
   @Override
   public String toString() {
     StringBuilder builder = new StringBuilder();
@@ -190,14 +259,30 @@ public class MonteCarloSearch implements Agent, AsynchronousAgent {
    * @param player Player to optimize for.
    * @param root Starting state to simulate from.
    * @param number Number of simulations to run.
+   * @param counters Statistics for the search, updated by this method.
    * @return An ActionScore representing the best-scoring action to take from
    *     this state and its score.
    */
   private ActionScore runSimulations(int player, State root, Map<Long, Double> actionRewards,
-      int number) {
+      int number, Counters counters) {
+    counters.allocationStart = SearchStats.currentThreadAllocatedBytes();
     for (int i = 0; i < number; ++i) {
-      runSimulation(player, root.copy(), actionRewards, 0);
+      State state = root.copy();
+      if (state instanceof Seedable) {
+        ((Seedable)state).setSeed(random.nextLong());
+      }
+      runSimulation(player, state, actionRewards, 0, counters);
+      counters.numSimulations++;
+      if (searchListener != null &&
+          counters.numSimulations % SearchListener.SIMULATIONS_PER_ITERATION == 0) {
+        searchListener.iterationCompleted(this,
+            (int)(counters.numSimulations / SearchListener.SIMULATIONS_PER_ITERATION),
+            counters.toSearchStats(0, counters.allocatedBytes +
+                SearchStats.currentThreadAllocatedBytes() - counters.allocationStart));
+      }
     }
+    counters.allocatedBytes +=
+        SearchStats.currentThreadAllocatedBytes() - counters.allocationStart;
     double bestReward = Double.NEGATIVE_INFINITY;
     long bestAction = -1;
     for (Map.Entry<Long, Double> entry : actionRewards.entrySet()) {
@@ -211,26 +296,97 @@ public class MonteCarloSearch implements Agent, AsynchronousAgent {
 
   /**
    * Runs a simulation to determine the total reward associated with being at
-   * the provided state.
+   * the provided state, by playing random actions until the game ends or the
+   * maximum depth is reached. The reward is discounted once for each action
+   * played, and credited to the first action.
    *
    * @param player The player who we are optimizing for.
    * @param state The current game state.
    * @param depth The depth in the search.
+   * @param counters Statistics for the search, updated by this method.
    * @return The reward associated with being at this state.
    */
   private double runSimulation(int player, State state, Map<Long, Double> actionRewards,
-      int depth) {
-    if (depth > maxDepth || state.isTerminal()) {
-      return evaluator.evaluate(player, state);
+      int depth, Counters counters) {
+    int startDepth = depth;
+    long firstAction = -1;
+    while (depth <= maxDepth && !state.isTerminal()) {
+      long action = state.getRandomAction();
+      if (depth == startDepth) {
+        firstAction = action;
+      }
+      state.perform(action);
+      counters.numNodes++;
+      depth++;
+    }
+    if (depth > maxDepth) {
+      counters.numCutoffs++;
+    }
+    if (depth > counters.deepest) {
+      counters.deepest = depth;
     }
-    long action = state.getRandomAction();
-    state.perform(action);
-    double reward = discountRate * runSimulation(player, state, actionRewards, depth + 1);
-    if (depth == 0) {
-      Double current = actionRewards.get(action);
-      actionRewards.put(action, current == null ? reward : current + reward);
+    counters.numEvaluations++;
+    double reward = evaluator.evaluate(player, state);
+    for (int i = startDepth; i < depth; ++i) {
+      reward = discountRate * reward;
+    }
+    if (startDepth == 0 && depth > 0) {
+      Double current = actionRewards.get(firstAction);
+      actionRewards.put(firstAction, current == null ? reward : current + reward);
     }
     return reward;
   }
-
+  
+  /**
+   * Records the statistics for a search which has just finished, and adds
+   * them to the totals.
+   *
+   * @param counters Statistics counted by the search.
+   */
+  private void recordStats(Counters counters) {
+    SearchStats stats = counters.toSearchStats(1, counters.allocatedBytes);
+    lastSearchStats = stats;
+    synchronized (this) {
+      searchStats = searchStats.plus(stats);
+    }
+    if (searchListener != null) {
+      searchListener.searchFinished(this, stats);
+    }
+  }
+  
+  /**
+   * Statistics for a single search, which are only updated by the thread
+   * running the search.
+   */
+  private static class Counters {
+    // Value of System.nanoTime() when the search began.
+    final long startTime = System.nanoTime();
+    long numSimulations;
+    long numNodes;
+    int deepest;
+    long allocatedBytes;
+    long numCutoffs;
+    long numEvaluations;
+    // Bytes allocated by the search's thread when it began running the
+    // current batch of simulations.
+    long allocationStart;
+    
+    /**
+     * @param numSearches Number of finished searches to report.
+     * @param allocatedBytes Number of bytes allocated so far to report.
+     * @return The statistics counted so far.
+     */
+    SearchStats toSearchStats(int numSearches, long allocatedBytes) {
+      return SearchStats.builder()
+          .setNumSearches(numSearches)
+          .setNumSimulations(numSimulations)
+          .setNumNodes(numNodes)
+          .setMaxDepth(deepest)
+          .setElapsedNanos(System.nanoTime() - startTime)
+          .setAllocatedBytes(allocatedBytes)
+          .setNumCutoffs(numCutoffs)
+          .setNumEvaluations(numEvaluations)
+          .build();
+    }
+  }
 }
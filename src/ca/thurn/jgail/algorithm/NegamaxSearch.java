@@ -4,12 +4,20 @@ import ca.thurn.jgail.core.ActionScore;
 import ca.thurn.jgail.core.AgentEvaluator;
 import ca.thurn.jgail.core.AsynchronousAgent;
 import ca.thurn.jgail.core.Evaluator;
+import ca.thurn.jgail.core.HashableState;
+import ca.thurn.jgail.core.Instrumented;
+import ca.thurn.jgail.core.SearchListener;
+import ca.thurn.jgail.core.SearchStats;
+import ca.thurn.jgail.core.Seedable;
 import ca.thurn.jgail.core.State;
+import ca.thurn.jgail.core.TranspositionTable;
+
+import java.util.Arrays;
 
 /**
  * An agent which selects an action via the Negamax search algorithm.
  */
-public class NegamaxSearch implements AsynchronousAgent {
+public class NegamaxSearch implements AsynchronousAgent, Instrumented, Seedable {
   
   /**
    * Builder for NegamaxSearch.
@@ -18,6 +26,11 @@ public class NegamaxSearch implements AsynchronousAgent {
     private final State stateRepresentation;
     private int searchDepth = 5;
     private Evaluator evaluator;
+    private int transpositionTableSize = 0;
+    private boolean moveOrdering = false;
+    private long timeBudget = 0L;
+    private long nodeBudget = 0L;
+    private SearchListener searchListener = null;
     
     /**
      * Constructor.
@@ -34,7 +47,12 @@ public class NegamaxSearch implements AsynchronousAgent {
      * @return A new NegamaxSearch agent based on this builder.
      */
     public NegamaxSearch build() {
-      return new NegamaxSearch(stateRepresentation, searchDepth, evaluator);
+      if (transpositionTableSize > 0 && !(stateRepresentation instanceof HashableState)) {
+        throw new IllegalStateException(
+            "Transposition tables require a HashableState state representation");
+      }
+      return new NegamaxSearch(stateRepresentation, searchDepth, evaluator,
+          transpositionTableSize, moveOrdering, timeBudget, nodeBudget, searchListener);
     }
     
     /**
@@ -56,7 +74,78 @@ public class NegamaxSearch implements AsynchronousAgent {
     public Builder setEvaluator(Evaluator evaluator) {
       this.evaluator = evaluator;
       return this;
-    }    
+    }
+    
+    /**
+     * @param transpositionTableSize If positive, the number of entries in a
+     *     {@link TranspositionTable} used to reuse the results of searching
+     *     positions which are reached more than once, either via different
+     *     sequences of actions, on successive iterations of iterative
+     *     deepening or in later searches. Requires a {@link HashableState} state representation.
+     *     Default value: 0 (no transposition table).
+     * @return this.
+     */
+    public Builder setTranspositionTableSize(int transpositionTableSize) {
+      this.transpositionTableSize = transpositionTableSize;
+      return this;
+    }
+    
+    /**
+     * @param moveOrdering If true, actions are searched in order of how
+     *     likely they are to cause an early alpha-beta cutoff instead of in
+     *     the order returned by the state's action iterator: first the best
+     *     action stored in the transposition table (if there is one), then
+     *     the two most recent "killer" actions which caused cutoffs at the
+     *     same depth, then actions in descending order of their history
+     *     score, which accumulates each time an action causes a cutoff.
+     *     Default value: false.
+     * @return this.
+     */
+    public Builder setMoveOrdering(boolean moveOrdering) {
+      this.moveOrdering = moveOrdering;
+      return this;
+    }
+    
+    /**
+     * @param timeBudget If positive, the number of milliseconds each search
+     *     may take. Searches then use iterative deepening, stopping when the
+     *     budget runs out or when the next depth is not expected to finish
+     *     within it, and return the result of the deepest completed depth.
+     *     Blocking searches go no deeper than the search depth. The first
+     *     depth always runs to completion so that a result is available.
+     *     Default value: 0 (no time budget).
+     * @return this.
+     */
+    public Builder setTimeBudget(long timeBudget) {
+      this.timeBudget = timeBudget;
+      return this;
+    }
+    
+    /**
+     * @param nodeBudget If positive, the number of nodes each search may
+     *     visit. Searches then use iterative deepening as with a time budget,
+     *     stopping when the budget runs out or when the next depth is not
+     *     expected to finish within it. Unlike a time budget, a node budget
+     *     makes the result of a search independent of the speed of the
+     *     machine it runs on. May be combined with a time budget. Default
+     *     value: 0 (no node budget).
+     * @return this.
+     */
+    public Builder setNodeBudget(long nodeBudget) {
+      this.nodeBudget = nodeBudget;
+      return this;
+    }
+    
+    /**
+     * @param searchListener Listener to notify about the progress of
+     *     searches, or null. Each completed depth of iterative deepening is
+     *     reported as an iteration. Default value: null.
+     * @return this.
+     */
+    public Builder setSearchListener(SearchListener searchListener) {
+      this.searchListener = searchListener;
+      return this;
+    }
   }
   
   /**
@@ -67,16 +156,44 @@ public class NegamaxSearch implements AsynchronousAgent {
     return new Builder(stateRepresentation);
   }
   
+  // Number of entries in the history table. Must be a power of two.
+  private static final int HISTORY_SIZE = 4096;
+  // History scores saturate here, below the scores reserved for hash and
+  // killer actions.
+  private static final int MAX_HISTORY_SCORE = Integer.MAX_VALUE / 2;
+  // The clock is read once per this many nodes, plus once per evaluation.
+  // Must be a power of two.
+  private static final int CLOCK_INTERVAL = 256;
+  private static final SearchAbortedException SEARCH_ABORTED = new SearchAbortedException();
+  
   private final State stateRepresentation;
   private final int searchDepth;
   private final Evaluator evaluator;
-  private volatile ActionScore asyncResult;
+  // Null if no transposition table is in use.
+  private final TranspositionTable transpositionTable;
+  private final boolean moveOrdering;
+  private final long timeBudget;
+  private final long nodeBudget;
+  // Null if there is no listener.
+  private final SearchListener searchListener;
+  private volatile Searcher lastSearcher;
+  private volatile SearchStats lastSearchStats = SearchStats.EMPTY;
+  private SearchStats searchStats = SearchStats.EMPTY;
+  private Searcher asyncSearcher;
   private Thread workerThread;  
   
-  private NegamaxSearch(State stateRepresentation, int searchDepth, Evaluator evaluator) {
+  private NegamaxSearch(State stateRepresentation, int searchDepth, Evaluator evaluator,
+      int transpositionTableSize, boolean moveOrdering, long timeBudget, long nodeBudget,
+      SearchListener searchListener) {
     this.stateRepresentation = stateRepresentation;
     this.searchDepth = searchDepth;
     this.evaluator = evaluator;
+    this.transpositionTable = transpositionTableSize > 0 ?
+        new TranspositionTable(transpositionTableSize) : null;
+    this.moveOrdering = moveOrdering;
+    this.timeBudget = timeBudget;
+    this.nodeBudget = nodeBudget;
+    this.searchListener = searchListener;
   }
 
   /**
@@ -84,8 +201,24 @@ public class NegamaxSearch implements AsynchronousAgent {
    */
   @Override
   public ActionScore pickActionBlocking(int player, State rootNode) {
-    return search(player, rootNode, searchDepth, Double.NEGATIVE_INFINITY,
-        Double.POSITIVE_INFINITY);
+    startTranspositionTableGeneration();
+    Searcher searcher = new Searcher();
+    lastSearcher = searcher;
+    if (searchListener != null) {
+      searchListener.searchStarted(this, rootNode);
+    }
+    searcher.allocationStart = SearchStats.currentThreadAllocatedBytes();
+    ActionScore result;
+    if (timeBudget > 0 || nodeBudget > 0) {
+      searcher.deepen(player, rootNode, searchDepth);
+      result = searcher.result;
+    } else {
+      result = searcher.search(player, rootNode, searchDepth, 0, Double.NEGATIVE_INFINITY,
+          Double.POSITIVE_INFINITY);
+    }
+    searcher.allocatedBytes = SearchStats.currentThreadAllocatedBytes() - searcher.allocationStart;
+    recordStats(searcher);
+    return result;
   }
 
   /**
@@ -98,64 +231,464 @@ public class NegamaxSearch implements AsynchronousAgent {
 
   @Override
   public void beginAsynchronousSearch(final int player, final State root) {
+    startTranspositionTableGeneration();
+    final Searcher searcher = new Searcher();
+    lastSearcher = searcher;
+    asyncSearcher = searcher;
+    if (searchListener != null) {
+      searchListener.searchStarted(this, root);
+    }
     workerThread = (new Thread() {
       @Override
       public void run() {
-        int searchDepth = 1;
-        while (!isInterrupted()) {
-          asyncResult = search(player, root.copy(), searchDepth++, Double.NEGATIVE_INFINITY,
-              Double.POSITIVE_INFINITY);
-        }
+        searcher.allocationStart = SearchStats.currentThreadAllocatedBytes();
+        searcher.deepen(player, root, Integer.MAX_VALUE);
+        searcher.allocatedBytes =
+            SearchStats.currentThreadAllocatedBytes() - searcher.allocationStart;
+        recordStats(searcher);
       }
     });
     workerThread.start();        
   }
 
+  /**
+   * {@inheritDoc}
+   * 
+   * The search in progress is cancelled and abandoned, and the result of the
+   * deepest completed depth is returned.
+   */
   @Override
   public ActionScore getAsynchronousSearchResult() {
-    workerThread.interrupt();
+    asyncSearcher.cancelled = true;
+    boolean interrupted = false;
+    while (true) {
+      try {
+        workerThread.join();
+        break;
+      } catch (InterruptedException e) {
+        interrupted = true;
+      }
+    }
+    if (interrupted) {
+      Thread.currentThread().interrupt();
+    }
+    ActionScore result = asyncSearcher.result;
     workerThread = null;
-    return asyncResult;
+    asyncSearcher = null;
+    return result;
   }
   
   /**
-   * Search for the best action to take for the provided player.
-   * 
-   * @param player The player to find an action for.
-   * @param state The root state for the search.
-   * @param maxDepth The maximum depth to search to in the game tree.
-   * @param alpha The minimum known score that the maximizing player can get.
-   * @param beta The maximum known score that the minimizing player can get.
-   * @return An ActionScore pair consisting of the best action for the player
-   *     to take and the heuristic score associated with this action.
-   */
-  private ActionScore search(int player, State state, int maxDepth, double alpha, double beta) {
-    if (state.isTerminal() || maxDepth == 0) {
-      return new ActionScore(-1, evaluator.evaluate(player, state.copy()));
-    }
-    double bestValue = Double.NEGATIVE_INFINITY;
-    long bestAction = -1;
-    State.ActionIterator actionIterator = state.getActionIterator();
-    while (actionIterator.hasNextAction()) {
-      long action = actionIterator.nextAction();
-      long undoToken = state.perform(action);
-      double value = -1 *
-          search(state.getCurrentPlayer(), state, maxDepth - 1, -beta, -alpha).getScore();
-      state.undo(action, undoToken);
-      if (value > bestValue) {
-        bestValue = value;
-        bestAction = action;
-      }
-      if (value > alpha) {
-        alpha = value;
-      }
-      if (alpha >= beta) {        
-        break;
+   * @return The number of nodes visited by the most recent search, including
+   *     every iteration of an asynchronous search. Nodes answered from the
+   *     transposition table are included.
+   */
+  public long getNumNodes() {
+    Searcher searcher = lastSearcher;
+    return searcher == null ? 0 : searcher.numNodes;
+  }
+  
+  /**
+   * @return The number of alpha-beta cutoffs in the most recent search.
+   */
+  public long getNumCutoffs() {
+    Searcher searcher = lastSearcher;
+    return searcher == null ? 0 : searcher.numCutoffs;
+  }
+  
+  /**
+   * @return The number of alpha-beta cutoffs in the most recent search which
+   *     were caused by the first action searched. The closer this is to
+   *     {@link NegamaxSearch#getNumCutoffs()}, the better the move ordering.
+   */
+  public long getNumFirstActionCutoffs() {
+    Searcher searcher = lastSearcher;
+    return searcher == null ? 0 : searcher.numFirstActionCutoffs;
+  }
+  
+  /**
+   * {@inheritDoc} The number of nodes and number of cutoffs are as reported
+   * by {@link NegamaxSearch#getNumNodes()} and
+   * {@link NegamaxSearch#getNumCutoffs()}, and the maximum depth is the
+   * greatest depth at which a node was visited, including by an iteration of
+   * iterative deepening which did not complete.
+   */
+  @Override
+  public SearchStats getLastSearchStats() {
+    return lastSearchStats;
+  }
+  
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public synchronized SearchStats getSearchStats() {
+    return searchStats;
+  }
+  
+  /**
+   * Records the statistics for a search which has just finished, and adds
+   * them to the totals.
+   *
+   * @param searcher The searcher which performed the search.
+   */
+  private void recordStats(Searcher searcher) {
+    SearchStats stats = searcher.toSearchStats(1);
+    lastSearchStats = stats;
+    synchronized (this) {
+      searchStats = searchStats.plus(stats);
+    }
+    if (searchListener != null) {
+      searchListener.searchFinished(this, stats);
+    }
+  }
+  
+  /**
+   * Performs the searches for a single root state. Holds the per-search
+   * action buffers and move ordering tables, so that a search which is still
+   * finishing on a background thread cannot interfere with a newer one.
+   */
+  private class Searcher {
+    // Actions available at each ply of the current search path.
+    private long[][] actionBuffers = new long[0][];
+    // Number of actions in each entry of actionBuffers.
+    private int[] numActions = new int[0];
+    // Two actions per ply which recently caused cutoffs.
+    private long[][] killers = new long[0][];
+    // Accumulated cutoff counts, indexed by a hash of the action.
+    private final int[] history;
+    private long numNodes;
+    private long numCutoffs;
+    private long numFirstActionCutoffs;
+    private int deepestPly;
+    private long numEvaluations;
+    private long allocatedBytes;
+    // Bytes allocated by the searching thread when the search began.
+    private long allocationStart;
+    // Value of System.nanoTime() when the searcher was created.
+    private final long startTime = System.nanoTime();
+    // Value of System.nanoTime() after which the search should stop, or
+    // Long.MAX_VALUE if there is no time budget.
+    private final long deadline;
+    // Number of nodes after which the search should stop, or Long.MAX_VALUE
+    // if there is no node budget.
+    private final long nodeLimit;
+    private volatile boolean cancelled;
+    // Result of the deepest completed iteration of deepen().
+    private volatile ActionScore result;
+    
+    Searcher() {
+      this.history = moveOrdering ? new int[HISTORY_SIZE] : null;
+      this.deadline = timeBudget > 0 ?
+          System.nanoTime() + timeBudget * 1000000L : Long.MAX_VALUE;
+      this.nodeLimit = nodeBudget > 0 ? nodeBudget : Long.MAX_VALUE;
+    }
+    
+    /**
+     * Performs iterative deepening searches from the provided root state,
+     * storing the result of each completed depth in result. Stops when the
+     * search is cancelled, the maximum depth has been searched, the deadline
+     * has passed or the node limit has been reached, or the next depth is not
+     * expected to finish within them. The time and number of nodes the next
+     * depth will take are estimated by assuming that they grow by the same
+     * factor as from the previous depth to this one.
+     * 
+     * @param player The player to find an action for.
+     * @param root The root state for the search. Not modified.
+     * @param maxDepth The maximum depth to search to.
+     */
+    void deepen(int player, State root, int maxDepth) {
+      long previousTime = 0L;
+      long previousNodes = 0L;
+      for (int depth = 1; depth <= maxDepth && !cancelled; ++depth) {
+        long start = System.nanoTime();
+        long startNodes = numNodes;
+        try {
+          // Aborting leaves the state partially modified, so each iteration
+          // searches a fresh copy.
+          result = search(player, root.copy(), depth, 0, Double.NEGATIVE_INFINITY,
+              Double.POSITIVE_INFINITY);
+        } catch (SearchAbortedException e) {
+          return;
+        }
+        long end = System.nanoTime();
+        long time = end - start;
+        if (searchListener != null) {
+          allocatedBytes = SearchStats.currentThreadAllocatedBytes() - allocationStart;
+          searchListener.iterationCompleted(NegamaxSearch.this, depth, toSearchStats(0));
+        }
+        double growth = previousTime > 0 ? Math.max(1.0, (double)time / previousTime) : 1.0;
+        if (end + time * growth > deadline) {
+          return;
+        }
+        long nodes = numNodes - startNodes;
+        double nodeGrowth = previousNodes > 0 ?
+            Math.max(1.0, (double)nodes / previousNodes) : 1.0;
+        if (numNodes + nodes * nodeGrowth > nodeLimit) {
+          return;
+        }
+        previousTime = time;
+        previousNodes = nodes;
       }
     }
-    return new ActionScore(bestAction, bestValue);
+    
+    /**
+     * @param numSearches Number of finished searches to report.
+     * @return The statistics counted so far.
+     */
+    SearchStats toSearchStats(int numSearches) {
+      return SearchStats.builder()
+          .setNumSearches(numSearches)
+          .setNumNodes(numNodes)
+          .setMaxDepth(deepestPly)
+          .setElapsedNanos(System.nanoTime() - startTime)
+          .setAllocatedBytes(allocatedBytes)
+          .setNumCutoffs(numCutoffs)
+          .setNumEvaluations(numEvaluations)
+          .build();
+    }
+    
+    /**
+     * Search for the best action to take for the provided player.
+     * 
+     * @param player The player to find an action for.
+     * @param state The root state for the search.
+     * @param maxDepth The maximum depth to search to in the game tree.
+     * @param ply The number of actions between the root state and this state.
+     * @param alpha The minimum known score that the maximizing player can get.
+     * @param beta The maximum known score that the minimizing player can get.
+     * @return An ActionScore pair consisting of the best action for the player
+     *     to take and the heuristic score associated with this action.
+     */
+    ActionScore search(int player, State state, int maxDepth, int ply, double alpha,
+        double beta) {
+      if ((++numNodes & (CLOCK_INTERVAL - 1)) == 0) {
+        checkForAbort();
+      }
+      if (ply > deepestPly) {
+        deepestPly = ply;
+      }
+      long hash = 0L;
+      long hashAction = -1;
+      if (transpositionTable != null) {
+        hash = ((HashableState)state).hash();
+        int entry = transpositionTable.find(hash);
+        if (entry != TranspositionTable.NOT_FOUND) {
+          hashAction = transpositionTable.getAction(entry);
+          if (transpositionTable.getDepth(entry) >= maxDepth) {
+            double score = transpositionTable.getScore(entry);
+            switch (transpositionTable.getFlag(entry)) {
+              case TranspositionTable.EXACT:
+                return new ActionScore(hashAction, score);
+              case TranspositionTable.LOWER_BOUND:
+                alpha = Math.max(alpha, score);
+                break;
+              case TranspositionTable.UPPER_BOUND:
+                beta = Math.min(beta, score);
+                break;
+            }
+            if (alpha >= beta) {
+              return new ActionScore(hashAction, score);
+            }
+          }
+        }
+      }
+      if (state.isTerminal() || maxDepth == 0) {
+        checkForAbort();
+        numEvaluations++;
+        double score = evaluator.evaluate(player, state.copy());
+        if (transpositionTable != null) {
+          transpositionTable.store(hash, maxDepth, TranspositionTable.EXACT, score, -1);
+        }
+        return new ActionScore(-1, score);
+      }
+      long[] actions = collectActions(state, ply);
+      int count = numActions[ply];
+      double originalAlpha = alpha;
+      double bestValue = Double.NEGATIVE_INFINITY;
+      long bestAction = -1;
+      for (int i = 0; i < count; ++i) {
+        if (moveOrdering) {
+          selectAction(actions, i, count, ply, hashAction);
+        }
+        long action = actions[i];
+        long undoToken = state.perform(action);
+        double value = -1 * search(state.getCurrentPlayer(), state, maxDepth - 1, ply + 1,
+            -beta, -alpha).getScore();
+        state.undo(action, undoToken);
+        if (value > bestValue) {
+          bestValue = value;
+          bestAction = action;
+        }
+        if (value > alpha) {
+          alpha = value;
+        }
+        if (alpha >= beta) {
+          numCutoffs++;
+          if (i == 0) {
+            numFirstActionCutoffs++;
+          }
+          if (moveOrdering) {
+            recordCutoff(action, ply, maxDepth);
+          }
+          break;
+        }
+      }
+      if (transpositionTable != null) {
+        int flag;
+        if (bestValue <= originalAlpha) {
+          flag = TranspositionTable.UPPER_BOUND;
+        } else if (bestValue >= beta) {
+          flag = TranspositionTable.LOWER_BOUND;
+        } else {
+          flag = TranspositionTable.EXACT;
+        }
+        transpositionTable.store(hash, maxDepth, flag, bestValue, bestAction);
+      }
+      return new ActionScore(bestAction, bestValue);
+    }
+    
+    /**
+     * Aborts the search by throwing a {@link SearchAbortedException} if it has
+     * been cancelled, or if it has passed its deadline or node limit and at
+     * least one depth of iterative deepening has completed.
+     */
+    private void checkForAbort() {
+      if (cancelled ||
+          (result != null && (numNodes > nodeLimit || System.nanoTime() > deadline))) {
+        throw SEARCH_ABORTED;
+      }
+    }
+    
+    /**
+     * Copies the actions available in a state into the action buffer for a
+     * ply, growing the buffers as needed.
+     *
+     * @param state Current state.
+     * @param ply The number of actions between the root state and this state.
+     * @return The action buffer for this ply. Its length is stored in
+     *     numActions.
+     */
+    private long[] collectActions(State state, int ply) {
+      if (ply >= actionBuffers.length) {
+        int length = Math.max(ply + 1, actionBuffers.length * 2);
+        actionBuffers = Arrays.copyOf(actionBuffers, length);
+        numActions = Arrays.copyOf(numActions, length);
+        killers = Arrays.copyOf(killers, length);
+      }
+      long[] actions = actionBuffers[ply];
+      if (actions == null) {
+        actions = new long[16];
+        killers[ply] = new long[] {-1, -1};
+      }
+      int count = 0;
+      State.ActionIterator actionIterator = state.getActionIterator();
+      while (actionIterator.hasNextAction()) {
+        if (count == actions.length) {
+          actions = Arrays.copyOf(actions, count * 2);
+        }
+        actions[count++] = actionIterator.nextAction();
+      }
+      actionBuffers[ply] = actions;
+      numActions[ply] = count;
+      return actions;
+    }
+    
+    /**
+     * Moves the most promising of the actions which have not yet been
+     * searched into the next position to search. The hash action is most
+     * promising, followed by the killer actions for this ply and then by the
+     * action with the highest history score. Actions which are not in the
+     * buffer are never introduced, so stale or colliding table entries are
+     * harmless.
+     *
+     * @param actions Action buffer.
+     * @param next Index of the next action to search. Actions before this
+     *     index have been searched.
+     * @param count Number of actions in the buffer.
+     * @param ply The number of actions between the root state and this state.
+     * @param hashAction Best action stored in the transposition table for
+     *     this state, or -1.
+     */
+    private void selectAction(long[] actions, int next, int count, int ply, long hashAction) {
+      long[] plyKillers = killers[ply];
+      int best = next;
+      long bestScore = Long.MIN_VALUE;
+      for (int i = next; i < count; ++i) {
+        long action = actions[i];
+        long score;
+        if (action == hashAction) {
+          score = Long.MAX_VALUE;
+        } else if (action == plyKillers[0]) {
+          score = Long.MAX_VALUE - 1;
+        } else if (action == plyKillers[1]) {
+          score = Long.MAX_VALUE - 2;
+        } else {
+          score = history[historyIndex(action)];
+        }
+        if (score > bestScore) {
+          bestScore = score;
+          best = i;
+        }
+      }
+      long action = actions[best];
+      actions[best] = actions[next];
+      actions[next] = action;
+    }
+    
+    /**
+     * Records that an action caused a cutoff, updating the killer actions and
+     * history scores.
+     *
+     * @param action Action which caused a cutoff.
+     * @param ply The number of actions between the root state and the state
+     *     the action was performed in.
+     * @param depth The remaining search depth at that state.
+     */
+    private void recordCutoff(long action, int ply, int depth) {
+      long[] plyKillers = killers[ply];
+      if (plyKillers[0] != action) {
+        plyKillers[1] = plyKillers[0];
+        plyKillers[0] = action;
+      }
+      int index = historyIndex(action);
+      history[index] = Math.min(history[index] + depth * depth, MAX_HISTORY_SCORE);
+    }
+  }
+
+  /**
+   * Thrown to unwind an aborted search. A single instance without a stack
+   * trace is reused, since aborting is routine rather than exceptional.
+   */
+  private static class SearchAbortedException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+    
+    @Override
+    public synchronized Throwable fillInStackTrace() {
+      return this;
+    }
+  }
+
+  /**
+   * @param action An action.
+   * @return The index of this action in the history table.
+   */
+  private static int historyIndex(long action) {
+    long hash = action * 0x9E3779B97F4A7C15L;
+    return (int)(hash >>> 32) & (HISTORY_SIZE - 1);
   }
 
+  /**
+   * {@inheritDoc} Seeds the evaluator, if it is Seedable. The search itself
+   * makes no random choices.
+   */
+  @Override
+  public void setSeed(long seed) {
+    if (evaluator instanceof Seedable) {
+      ((Seedable)evaluator).setSeed(seed);
+    }
+  }
+  
   @Override
   public String toString() {
     StringBuilder builder = new StringBuilder();
@@ -163,8 +696,35 @@ public class NegamaxSearch implements AsynchronousAgent {
     builder.append(searchDepth);
     builder.append(", evaluator=");
     builder.append(evaluator);
+    if (transpositionTable != null) {
+      builder.append(", transpositionTableSize=");
+      builder.append(transpositionTable.capacity());
+    }
+    if (moveOrdering) {
+      builder.append(", moveOrdering=true");
+    }
+    if (timeBudget > 0) {
+      builder.append(", timeBudget=");
+      builder.append(timeBudget);
+    }
+    if (nodeBudget > 0) {
+      builder.append(", nodeBudget=");
+      builder.append(nodeBudget);
+    }
     builder.append("]");
     return builder.toString();
   }
+  
+  /**
+   * Starts a new generation in the transposition table, if there is one.
+   * Entries from earlier searches remain valid, since they are keyed by state
+   * and scored for the player to move, but become replaceable so that the
+   * table fills with results relevant to the new root.
+   */
+  private void startTranspositionTableGeneration() {
+    if (transpositionTable != null) {
+      transpositionTable.newGeneration();
+    }
+  }
 
 }
@@ -0,0 +1,373 @@
+package ca.thurn.jgail.algorithm;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import ca.thurn.jgail.core.ActionScore;
+import ca.thurn.jgail.core.Agent;
+import ca.thurn.jgail.core.AsynchronousAgent;
+import ca.thurn.jgail.core.HashableState;
+import ca.thurn.jgail.core.OpeningBook;
+import ca.thurn.jgail.core.Seedable;
+import ca.thurn.jgail.core.State;
+import ca.thurn.jgail.core.State.ActionIterator;
+
+/**
+ * An agent which plays the moves recorded in an {@link OpeningBook} during
+ * the opening of a game, and otherwise defers to another agent. In positions
+ * within the first few plies of the game which have been visited enough
+ * times by previous searches, the action with the most recorded visits is
+ * played immediately. In other opening positions, if the underlying agent is
+ * a {@link UctSearch}, the statistics for the root of its search are added to
+ * the book, so a book shared by the agents in a tournament grows as games are
+ * played.
+ *
+ * <p>The agent tracks how many plies have been played by looking the current
+ * position up among the positions within two actions of the starting
+ * position, which are found once when the agent is constructed, or else
+ * within two actions of the previous opening position it was asked about. It
+ * must therefore be asked about every one of its player's turns in order.
+ * Once a game has left the opening, each turn costs a single lookup.
+ *
+ * <p>Requires a {@link HashableState} state representation whose starting
+ * position has the same hash regardless of its source of randomness. States
+ * whose hash includes randomly drawn hidden information, such as the hands
+ * in an {@link ca.thurn.jgail.ingenious.IngeniousState}, never repeat a
+ * position from one game to the next, so a book cannot be built for them.
+ * Not safe for use by multiple threads, although any number of agents may
+ * share a single book.
+ */
+public class OpeningBookAgent implements AsynchronousAgent, Seedable {
+
+  /**
+   * Builder for OpeningBookAgent.
+   */
+  public static class Builder {
+    private final Agent agent;
+    private final OpeningBook book;
+    private int maxPly = 8;
+    private int minVisits = 100000;
+    private boolean record = true;
+
+    private Builder(Agent agent, OpeningBook book) {
+      this.agent = agent;
+      this.book = book;
+    }
+
+    /**
+     * @return A new OpeningBookAgent instance.
+     */
+    public OpeningBookAgent build() {
+      if (!(agent.getStateRepresentation() instanceof HashableState)) {
+        throw new IllegalStateException(
+            "Opening books require a HashableState state representation");
+      }
+      if (startingHash(0L) != startingHash(1L)) {
+        throw new IllegalStateException(
+            "Opening books require a starting position which does not depend on randomness");
+      }
+      return new OpeningBookAgent(agent, book, maxPly, minVisits, record);
+    }
+
+    /**
+     * @param seed A seed.
+     * @return The hash of the starting position, if the state representation
+     *     is seeded with this seed before being set to its starting
+     *     conditions.
+     */
+    private long startingHash(long seed) {
+      State state = agent.getStateRepresentation();
+      if (state instanceof Seedable) {
+        ((Seedable)state).setSeed(seed);
+      }
+      return ((HashableState)state.setToStartingConditions()).hash();
+    }
+
+    /**
+     * @param maxPly Number of plies at the start of the game which are
+     *     considered part of the opening. Default value: 8.
+     * @return this.
+     */
+    public Builder setMaxPly(int maxPly) {
+      this.maxPly = maxPly;
+      return this;
+    }
+
+    /**
+     * @param minVisits Minimum total number of visits the book must have
+     *     recorded for the actions from a position before its moves are
+     *     played. Default value: 100000.
+     * @return this.
+     */
+    public Builder setMinVisits(int minVisits) {
+      this.minVisits = minVisits;
+      return this;
+    }
+
+    /**
+     * @param record If true and the underlying agent is a {@link UctSearch},
+     *     the root statistics of its searches from opening positions are
+     *     added to the book. Default value: true.
+     * @return this.
+     */
+    public Builder setRecord(boolean record) {
+      this.record = record;
+      return this;
+    }
+  }
+
+  /**
+   * @param agent Agent to defer to outside of the book.
+   * @param book Opening book to play from and record to.
+   * @return A new Builder for an OpeningBookAgent.
+   */
+  public static Builder builder(Agent agent, OpeningBook book) {
+    return new Builder(agent, book);
+  }
+
+  private final Agent agent;
+  private final OpeningBook book;
+  private final int maxPly;
+  private final int minVisits;
+  private final boolean record;
+  // The ply of each position within two actions of the starting position,
+  // keyed by hash.
+  private final Map<Long, Integer> startingPlies = new HashMap<Long, Integer>();
+  // The most recent position this agent was asked about while it was still
+  // in the opening, or null.
+  private HashableState lastState;
+  private int lastPly;
+  private boolean asyncRecord;
+  private ActionScore asyncResult;
+
+  private OpeningBookAgent(Agent agent, OpeningBook book, int maxPly, int minVisits,
+      boolean record) {
+    this.agent = agent;
+    this.book = book;
+    this.maxPly = maxPly;
+    this.minVisits = minVisits;
+    this.record = record;
+    addStartingPlies((HashableState)agent.getStateRepresentation().setToStartingConditions(),
+        0 /* ply */);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public ActionScore pickActionBlocking(int player, State rootNode) {
+    boolean opening = isOpening((HashableState)rootNode);
+    if (opening) {
+      ActionScore bookMove = bookMove((HashableState)rootNode);
+      if (bookMove != null) {
+        return bookMove;
+      }
+    }
+    ActionScore result = agent.pickActionBlocking(player, rootNode);
+    if (opening) {
+      recordSearch();
+    }
+    return result;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public State getStateRepresentation() {
+    return agent.getStateRepresentation();
+  }
+
+  /**
+   * {@inheritDoc} If the underlying agent is not an AsynchronousAgent, and
+   * the position is not in the book, this method blocks until the underlying
+   * agent picks an action.
+   */
+  @Override
+  public void beginAsynchronousSearch(int player, State root) {
+    asyncResult = null;
+    asyncRecord = false;
+    boolean opening = isOpening((HashableState)root);
+    if (opening) {
+      asyncResult = bookMove((HashableState)root);
+      if (asyncResult != null) {
+        return;
+      }
+    }
+    if (agent instanceof AsynchronousAgent) {
+      ((AsynchronousAgent)agent).beginAsynchronousSearch(player, root);
+      asyncRecord = opening;
+    } else {
+      asyncResult = agent.pickActionBlocking(player, root);
+      if (opening) {
+        recordSearch();
+      }
+    }
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public ActionScore getAsynchronousSearchResult() {
+    if (asyncResult != null) {
+      return asyncResult;
+    }
+    ActionScore result = ((AsynchronousAgent)agent).getAsynchronousSearchResult();
+    if (asyncRecord) {
+      recordSearch();
+    }
+    return result;
+  }
+
+  /**
+   * {@inheritDoc} Seeds the underlying agent, if it is Seedable.
+   */
+  @Override
+  public void setSeed(long seed) {
+    if (agent instanceof Seedable) {
+      ((Seedable)agent).setSeed(seed);
+    }
+  }
+
+  /**
+   * Determines how many plies into the game a position is, and remembers it
+   * for the next call.
+   *
+   * @param state A position this agent has been asked to pick an action in.
+   * @return True if the position is within the first maxPly plies.
+   */
+  private boolean isOpening(HashableState state) {
+    long hash = state.hash();
+    Integer startingPly = startingPlies.get(hash);
+    int ply;
+    if (startingPly != null) {
+      ply = startingPly;
+    } else if (lastState != null) {
+      int steps = stepsTo(lastState, hash);
+      ply = steps >= 0 ? lastPly + steps : -1;
+    } else {
+      ply = -1;
+    }
+    if (ply >= 0 && ply < maxPly) {
+      lastState = (HashableState)state.copy();
+      lastPly = ply;
+      return true;
+    }
+    lastState = null;
+    return false;
+  }
+
+  /**
+   * Records the ply of a position and of every position up to two actions
+   * after it in startingPlies, keeping the smallest ply for positions which
+   * are reached more than once.
+   *
+   * @param state A position. Restored to its original position before
+   *     returning.
+   * @param ply The ply of this position.
+   */
+  private void addStartingPlies(HashableState state, int ply) {
+    Integer previous = startingPlies.get(state.hash());
+    if (previous == null || previous > ply) {
+      startingPlies.put(state.hash(), ply);
+    }
+    if (ply == 2 || state.isTerminal()) {
+      return;
+    }
+    ActionIterator iterator = state.getActionIterator();
+    while (iterator.hasNextAction()) {
+      long action = iterator.nextAction();
+      long undoToken = state.perform(action);
+      addStartingPlies(state, ply + 1);
+      state.undo(action, undoToken);
+    }
+  }
+
+  /**
+   * @param from A starting position. Restored to its original position
+   *     before returning.
+   * @param hash Hash of a position to look for.
+   * @return The number of actions, up to two, which lead from the starting
+   *     position to a position with this hash, or -1 if it is not found.
+   */
+  private static int stepsTo(HashableState from, long hash) {
+    if (from.hash() == hash) {
+      return 0;
+    }
+    if (from.isTerminal()) {
+      return -1;
+    }
+    int result = -1;
+    ActionIterator firstIterator = from.getActionIterator();
+    while (result != 1 && firstIterator.hasNextAction()) {
+      long first = firstIterator.nextAction();
+      long firstUndoToken = from.perform(first);
+      if (from.hash() == hash) {
+        result = 1;
+      } else if (result == -1 && !from.isTerminal()) {
+        ActionIterator secondIterator = from.getActionIterator();
+        while (result == -1 && secondIterator.hasNextAction()) {
+          long second = secondIterator.nextAction();
+          long secondUndoToken = from.perform(second);
+          if (from.hash() == hash) {
+            result = 2;
+          }
+          from.undo(second, secondUndoToken);
+        }
+      }
+      from.undo(first, firstUndoToken);
+    }
+    return result;
+  }
+
+  /**
+   * @param state An opening position.
+   * @return The action with the most visits recorded in the book for this
+   *     position along with its average reward, or null if the book does not
+   *     have enough visits recorded for this position.
+   */
+  private ActionScore bookMove(HashableState state) {
+    long hash = state.hash();
+    long totalVisits = 0;
+    int bestVisits = 0;
+    long bestAction = -1;
+    ActionIterator iterator = state.getActionIterator();
+    while (iterator.hasNextAction()) {
+      long action = iterator.nextAction();
+      int numVisits = book.getNumVisits(hash, action);
+      totalVisits += numVisits;
+      if (numVisits > bestVisits) {
+        bestVisits = numVisits;
+        bestAction = action;
+      }
+    }
+    if (totalVisits == 0 || totalVisits < minVisits) {
+      return null;
+    }
+    return new ActionScore(bestAction, book.getTotalReward(hash, bestAction) / bestVisits);
+  }
+
+  /**
+   * Adds the root statistics of the underlying agent's most recent search to
+   * the book, if recording is enabled and the agent is a UctSearch.
+   */
+  private void recordSearch() {
+    if (record && agent instanceof UctSearch) {
+      ((UctSearch)agent).addRootStatisticsTo(book);
+    }
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder builder = new StringBuilder();
+    builder.append("OpeningBookAgent [agent=");
+    builder.append(agent);
+    builder.append(", maxPly=");
+    builder.append(maxPly);
+    builder.append(", minVisits=");
+    builder.append(minVisits);
+    builder.append("]");
+    return builder.toString();
+  }
+}
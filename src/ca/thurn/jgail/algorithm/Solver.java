@@ -0,0 +1,484 @@
+package ca.thurn.jgail.algorithm;
+
+import ca.thurn.jgail.core.ActionScore;
+import ca.thurn.jgail.core.Agent;
+import ca.thurn.jgail.core.HashableState;
+import ca.thurn.jgail.core.MappedTable;
+import ca.thurn.jgail.core.Seedable;
+import ca.thurn.jgail.core.State;
+import ca.thurn.jgail.core.State.ActionIterator;
+import ca.thurn.jgail.core.Tablebase;
+
+/**
+ * An agent which plays perfectly in positions close enough to the end of the
+ * game to be solved exhaustively. Positions are solved by a depth-bounded
+ * search of every line of play, and the result for every position visited
+ * along the way is recorded in a {@link Tablebase}, so that positions reached
+ * again via other lines, in later searches, or by a {@link SolverEvaluator}
+ * are answered by a table lookup. Small games can be solved outright: solving
+ * tic-tac-toe from its starting position records about 4500 positions. In
+ * positions which cannot be solved within the depth and node limits, the
+ * agent defers to a fallback agent. Requires a {@link HashableState} state
+ * representation. Safe for use by multiple threads, although only one thread
+ * solves positions at a time. Lookups in the precomputed table do not wait
+ * for other threads.
+ */
+public class Solver implements Agent, Seedable {
+
+  /**
+   * Builder for Solver.
+   */
+  public static class Builder {
+    private final State stateRepresentation;
+    private int maxDepth = 12;
+    private int maxNodes = 1000000;
+    private int maxTableSize = 1 << 22;
+    private Agent fallback;
+    private MappedTable table;
+
+    private Builder(State stateRepresentation) {
+      this.stateRepresentation = stateRepresentation;
+      this.fallback = MonteCarloSearch.builder(stateRepresentation).build();
+    }
+
+    /**
+     * @return A new Solver instance.
+     */
+    public Solver build() {
+      if (!(stateRepresentation instanceof HashableState)) {
+        throw new IllegalStateException("Solver requires a HashableState state representation");
+      }
+      return new Solver(stateRepresentation, maxDepth, maxNodes, maxTableSize, fallback, table);
+    }
+
+    /**
+     * @param maxDepth Maximum number of actions ahead to search. Only
+     *     positions where every line of play ends within this many actions
+     *     of the winner's best line can be solved. In games like Connect 4,
+     *     where each action fills a cell, this solves every position with at
+     *     most this many empty cells. Default value: 12.
+     * @return this.
+     */
+    public Builder setMaxDepth(int maxDepth) {
+      this.maxDepth = maxDepth;
+      return this;
+    }
+
+    /**
+     * @param maxNodes Maximum number of new positions to search while trying
+     *     to solve a single position before giving up on it. Default value:
+     *     1000000.
+     * @return this.
+     */
+    public Builder setMaxNodes(int maxNodes) {
+      this.maxNodes = maxNodes;
+      return this;
+    }
+
+    /**
+     * @param maxTableSize Maximum number of positions to record in the
+     *     solver's {@link Tablebase}. Once it is full, results for positions
+     *     not already in the table are no longer recorded. Default value:
+     *     4194304.
+     * @return this.
+     */
+    public Builder setMaxTableSize(int maxTableSize) {
+      this.maxTableSize = maxTableSize;
+      return this;
+    }
+
+    /**
+     * @param fallback Agent to pick actions in positions which cannot be
+     *     solved. Must use the same state representation. Default value: a
+     *     {@link MonteCarloSearch} agent.
+     * @return this.
+     */
+    public Builder setFallback(Agent fallback) {
+      this.fallback = fallback;
+      return this;
+    }
+
+    /**
+     * @param table A table of positions which have already been solved, as
+     *     written by {@link MappedTable#write(java.io.File, Tablebase)}.
+     *     Positions in this table are never searched. Default value: null
+     *     (no precomputed table).
+     * @return this.
+     */
+    public Builder setTable(MappedTable table) {
+      if (table != null && table.getKind() != MappedTable.KIND_TABLEBASE) {
+        throw new IllegalArgumentException("Not a tablebase table: kind " + table.getKind());
+      }
+      this.table = table;
+      return this;
+    }
+  }
+
+  /**
+   * @param stateRepresentation State representation to use.
+   * @return A new Builder for a Solver agent.
+   */
+  public static Builder builder(State stateRepresentation) {
+    return new Builder(stateRepresentation);
+  }
+
+  private final State stateRepresentation;
+  private final int maxDepth;
+  private final int maxNodes;
+  private final int maxTableSize;
+  private final Agent fallback;
+  // Null if there is no precomputed table.
+  private final MappedTable table;
+  private final Tablebase tablebase = new Tablebase();
+  private int numNodes;
+  // Node limit of the current call to solve().
+  private int nodeLimit;
+  private boolean aborted;
+  // Best action from the root of the most recent search which solved its
+  // root without looking it up, or -1 if there is none.
+  private long rootAction;
+
+  private Solver(State stateRepresentation, int maxDepth, int maxNodes, int maxTableSize,
+      Agent fallback, MappedTable table) {
+    this.stateRepresentation = stateRepresentation;
+    this.maxDepth = maxDepth;
+    this.maxNodes = maxNodes;
+    this.maxTableSize = maxTableSize;
+    this.fallback = fallback;
+    this.table = table;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public ActionScore pickActionBlocking(int player, State rootNode) {
+    synchronized (this) {
+      HashableState state = (HashableState)rootNode;
+      rootAction = -1;
+      int value = solve(state);
+      if (Tablebase.outcome(value) != Tablebase.UNKNOWN) {
+        long action = rootAction != -1 ? rootAction : findAction(state, value);
+        if (action != -1) {
+          return new ActionScore(action, score(player, state, value));
+        }
+      }
+    }
+    return fallback.pickActionBlocking(player, rootNode);
+  }
+
+  /**
+   * Finds an action which achieves the value of a solved position whose
+   * value was looked up rather than searched, by solving each of its
+   * children with a fresh node budget.
+   *
+   * @param state A solved state. Restored to its original position before
+   *     returning.
+   * @param value The packed value of the state.
+   * @return The action leading to the most desirable child, or -1 if that
+   *     child's outcome could not be solved to match the state's outcome.
+   */
+  private long findAction(HashableState state, int value) {
+    int mover = state.getCurrentPlayer();
+    long bestAction = -1;
+    int bestOutcome = Tablebase.UNKNOWN;
+    int bestRank = Integer.MIN_VALUE;
+    ActionIterator iterator = state.getActionIterator();
+    while (iterator.hasNextAction()) {
+      long action = iterator.nextAction();
+      long undoToken = state.perform(action);
+      numNodes = 0;
+      nodeLimit = maxNodes;
+      aborted = false;
+      int childValue = search(state, maxDepth - 1);
+      int childOutcome = outcomeFor(mover, state, childValue);
+      state.undo(action, undoToken);
+      int rank = rank(childOutcome, Tablebase.distance(childValue));
+      if (rank > bestRank) {
+        bestRank = rank;
+        bestAction = action;
+        bestOutcome = childOutcome;
+      }
+    }
+    return bestOutcome == Tablebase.outcome(value) ? bestAction : -1;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public State getStateRepresentation() {
+    return stateRepresentation.copy();
+  }
+
+  /**
+   * {@inheritDoc} Seeds the fallback agent, if it is Seedable.
+   */
+  @Override
+  public void setSeed(long seed) {
+    if (fallback instanceof Seedable) {
+      ((Seedable)fallback).setSeed(seed);
+    }
+  }
+
+  /**
+   * Solves a position, if it can be solved within this solver's depth and
+   * node limits. The state is restored to its original position before
+   * returning.
+   *
+   * @param state A {@link HashableState} in this solver's state
+   *     representation.
+   * @return The packed {@link Tablebase} value of the position, from the
+   *     perspective of the player to move. Its outcome is
+   *     {@link Tablebase#UNKNOWN} if the position could not be solved.
+   */
+  public int solve(State state) {
+    return solve(state, maxNodes);
+  }
+
+  /**
+   * Solves a position, if it can be solved within this solver's depth limit
+   * and the provided node limit. Positions in the precomputed table are
+   * answered without waiting for other threads using this solver. If the
+   * node limit is reached, the position is recorded as unknown to this
+   * solver's maximum depth, so later calls return immediately instead of
+   * searching it again. The state is restored to its original position
+   * before returning.
+   *
+   * @param state A {@link HashableState} in this solver's state
+   *     representation.
+   * @param maxNodes Maximum number of new positions to search.
+   * @return The packed {@link Tablebase} value of the position, from the
+   *     perspective of the player to move. Its outcome is
+   *     {@link Tablebase#UNKNOWN} if the position could not be solved.
+   */
+  public int solve(State state, int maxNodes) {
+    HashableState hashable = (HashableState)state;
+    if (table != null && !hashable.isTerminal()) {
+      long precomputed = table.get(hashable.hash(), Tablebase.NOT_FOUND);
+      if (precomputed != Tablebase.NOT_FOUND) {
+        return (int)precomputed;
+      }
+    }
+    synchronized (this) {
+      numNodes = 0;
+      nodeLimit = maxNodes;
+      aborted = false;
+      rootAction = -1;
+      int value = search(hashable, maxDepth);
+      if (aborted) {
+        store(hashable.hash(), Tablebase.pack(Tablebase.UNKNOWN, maxDepth));
+      }
+      return value;
+    }
+  }
+
+  /**
+   * @return The tablebase recording every position this solver has visited,
+   *     up to its maximum table size. Positions which could not be solved are
+   *     recorded with an outcome of {@link Tablebase#UNKNOWN} and a distance
+   *     equal to the depth they were searched to. Callers must synchronize on
+   *     this solver while using it.
+   */
+  public Tablebase getTablebase() {
+    return tablebase;
+  }
+
+  /**
+   * @param player A player.
+   * @param state A state.
+   * @param value The packed value of this state.
+   * @return 1.0 if the provided player wins this state, -1.0 if they lose,
+   *     and 0.0 otherwise.
+   */
+  static double score(int player, State state, int value) {
+    switch (outcomeFor(player, state, value)) {
+      case Tablebase.WIN:
+        return 1.0;
+      case Tablebase.LOSS:
+        return -1.0;
+      default:
+        return 0.0;
+    }
+  }
+
+  /**
+   * Recursively solves a position. If the position is the root of a call to
+   * solve(), identified by being searched to the maximum depth, and it is
+   * solved by searching its children, the action achieving its value is
+   * recorded in rootAction.
+   *
+   * @param state Current state. Restored to its original position before
+   *     returning.
+   * @param depth Maximum number of actions ahead to search.
+   * @return The packed value of the position, from the perspective of the
+   *     player to move.
+   */
+  private int search(HashableState state, int depth) {
+    if (state.isTerminal()) {
+      int winner = state.getWinner();
+      if (winner == 0) {
+        return Tablebase.pack(Tablebase.DRAW, 0);
+      }
+      return Tablebase.pack(winner == state.getCurrentPlayer() ? Tablebase.WIN : Tablebase.LOSS,
+          0);
+    }
+    long hash = state.hash();
+    if (table != null) {
+      long precomputed = table.get(hash, Tablebase.NOT_FOUND);
+      if (precomputed != Tablebase.NOT_FOUND) {
+        return (int)precomputed;
+      }
+    }
+    if (depth <= 0) {
+      return Tablebase.pack(Tablebase.UNKNOWN, 0);
+    }
+    int stored = tablebase.get(hash);
+    if (stored != Tablebase.NOT_FOUND && (Tablebase.outcome(stored) != Tablebase.UNKNOWN ||
+        Tablebase.distance(stored) >= depth)) {
+      return stored;
+    }
+    if (numNodes >= nodeLimit) {
+      aborted = true;
+      return Tablebase.pack(Tablebase.UNKNOWN, 0);
+    }
+    numNodes++;
+
+    int mover = state.getCurrentPlayer();
+    int fastestWin = Integer.MAX_VALUE;
+    int fastestDraw = Integer.MAX_VALUE;
+    int slowestLoss = 0;
+    long winAction = -1;
+    long drawAction = -1;
+    long lossAction = -1;
+    boolean unknown = false;
+    ActionIterator iterator = state.getActionIterator();
+    while (iterator.hasNextAction()) {
+      long action = iterator.nextAction();
+      long undoToken = state.perform(action);
+      int childValue = search(state, depth - 1);
+      int outcome = outcomeFor(mover, state, childValue);
+      state.undo(action, undoToken);
+      if (aborted) {
+        return Tablebase.pack(Tablebase.UNKNOWN, 0);
+      }
+      int distance = Tablebase.distance(childValue) + 1;
+      switch (outcome) {
+        case Tablebase.WIN:
+          if (distance < fastestWin) {
+            fastestWin = distance;
+            winAction = action;
+          }
+          break;
+        case Tablebase.DRAW:
+          if (distance < fastestDraw) {
+            fastestDraw = distance;
+            drawAction = action;
+          }
+          break;
+        case Tablebase.LOSS:
+          if (lossAction == -1 || distance > slowestLoss) {
+            slowestLoss = distance;
+            lossAction = action;
+          }
+          break;
+        default:
+          unknown = true;
+      }
+      if (fastestWin == 1) {
+        break;
+      }
+    }
+
+    int result;
+    long bestAction = -1;
+    // An unsolved action might still win faster than a win found via a
+    // previously stored position which lies beyond the depth bound.
+    if (fastestWin <= depth || (fastestWin != Integer.MAX_VALUE && !unknown)) {
+      result = Tablebase.pack(Tablebase.WIN, fastestWin);
+      bestAction = winAction;
+    } else if (unknown) {
+      result = Tablebase.pack(Tablebase.UNKNOWN, depth);
+    } else if (fastestDraw != Integer.MAX_VALUE) {
+      result = Tablebase.pack(Tablebase.DRAW, fastestDraw);
+      bestAction = drawAction;
+    } else {
+      result = Tablebase.pack(Tablebase.LOSS, slowestLoss);
+      bestAction = lossAction;
+    }
+    if (depth == maxDepth) {
+      rootAction = bestAction;
+    }
+    store(hash, result);
+    return result;
+  }
+
+  /**
+   * Records the value of a position in the tablebase, unless the tablebase
+   * is full and does not already contain the position.
+   *
+   * @param hash The position's hash.
+   * @param value The position's packed value.
+   */
+  private void store(long hash, int value) {
+    if (tablebase.size() < maxTableSize || tablebase.get(hash) != Tablebase.NOT_FOUND) {
+      tablebase.put(hash, value);
+    }
+  }
+
+  /**
+   * @param player A player.
+   * @param state A state.
+   * @param value The packed value of this state, from the perspective of its
+   *     player to move.
+   * @return The outcome of this state from the perspective of the provided
+   *     player.
+   */
+  private static int outcomeFor(int player, State state, int value) {
+    int outcome = Tablebase.outcome(value);
+    if (player == state.getCurrentPlayer()) {
+      return outcome;
+    } else if (outcome == Tablebase.WIN) {
+      return Tablebase.LOSS;
+    } else if (outcome == Tablebase.LOSS) {
+      return Tablebase.WIN;
+    }
+    return outcome;
+  }
+
+  /**
+   * @param outcome An outcome for the player to move.
+   * @param distance The distance of the outcome.
+   * @return A number which is larger for more desirable outcomes: faster
+   *     wins, then draws, then unknown outcomes, then slower losses.
+   */
+  private static int rank(int outcome, int distance) {
+    switch (outcome) {
+      case Tablebase.WIN:
+        return Integer.MAX_VALUE - distance;
+      case Tablebase.DRAW:
+        return 0;
+      case Tablebase.LOSS:
+        return Integer.MIN_VALUE + 1 + distance;
+      default:
+        return -1;
+    }
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder builder = new StringBuilder();
+    builder.append("Solver [maxDepth=");
+    builder.append(maxDepth);
+    builder.append(", maxNodes=");
+    builder.append(maxNodes);
+    builder.append(", fallback=");
+    builder.append(fallback);
+    if (table != null) {
+      builder.append(", tableSize=");
+      builder.append(table.size());
+    }
+    builder.append("]");
+    return builder.toString();
+  }
+}
@@ -0,0 +1,90 @@
+package ca.thurn.jgail.algorithm;
+
+import ca.thurn.jgail.core.Evaluator;
+import ca.thurn.jgail.core.Seedable;
+import ca.thurn.jgail.core.State;
+import ca.thurn.jgail.core.Tablebase;
+
+/**
+ * An Evaluator which returns the exact value of positions that a
+ * {@link Solver} can solve, and defers to another Evaluator for all other
+ * positions. Solved positions score 1.0 for a win, -1.0 for a loss and 0.0
+ * for a draw, the same scale as a
+ * {@link ca.thurn.jgail.core.WinLossEvaluator}. Used as the evaluator of a
+ * {@link NegamaxSearch}, leaves in the solved region of the game are scored
+ * exactly. Used as the evaluator of a {@link UctSearch} with a small maximum
+ * simulation depth, simulations which reach the solved region stop there
+ * instead of playing out randomly.
+ *
+ * <p>Evaluation is meant to be cheap, so positions which have not already
+ * been solved are only searched up to a small node limit of their own. A
+ * position which cannot be solved within that limit is recorded by the solver
+ * as unknown, and is not searched again.
+ */
+public class SolverEvaluator implements Evaluator, Seedable {
+
+  /**
+   * Default maximum number of new positions to search per evaluation.
+   */
+  public static final int DEFAULT_MAX_NODES = 1000;
+
+  private final Solver solver;
+  private final Evaluator fallback;
+  private final int maxNodes;
+
+  /**
+   * Constructs a new SolverEvaluator.
+   *
+   * @param solver Solver to look up and solve positions with. Must use the
+   *     same state representation as the search using this evaluator.
+   * @param fallback Evaluator for positions the solver cannot solve.
+   */
+  public SolverEvaluator(Solver solver, Evaluator fallback) {
+    this(solver, fallback, DEFAULT_MAX_NODES);
+  }
+
+  /**
+   * Constructs a new SolverEvaluator.
+   *
+   * @param solver Solver to look up and solve positions with. Must use the
+   *     same state representation as the search using this evaluator.
+   * @param fallback Evaluator for positions the solver cannot solve.
+   * @param maxNodes Maximum number of new positions to search while trying
+   *     to solve a single position.
+   */
+  public SolverEvaluator(Solver solver, Evaluator fallback, int maxNodes) {
+    this.solver = solver;
+    this.fallback = fallback;
+    this.maxNodes = maxNodes;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public double evaluate(int player, State state) {
+    int value = solver.solve(state, maxNodes);
+    if (Tablebase.outcome(value) == Tablebase.UNKNOWN) {
+      return fallback.evaluate(player, state);
+    }
+    return Solver.score(player, state, value);
+  }
+
+  /**
+   * {@inheritDoc} Seeds the solver, and the fallback evaluator if it is
+   * Seedable.
+   */
+  @Override
+  public void setSeed(long seed) {
+    solver.setSeed(seed);
+    if (fallback instanceof Seedable) {
+      ((Seedable)fallback).setSeed(seed);
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "SolverEvaluator [solver=" + solver + ", fallback=" + fallback + ", maxNodes=" +
+        maxNodes + "]";
+  }
+}
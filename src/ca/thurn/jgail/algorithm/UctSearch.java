@@ -1,11 +1,22 @@
 package ca.thurn.jgail.algorithm;
 
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
 import java.util.Random;
 
 import ca.thurn.jgail.core.ActionScore;
 import ca.thurn.jgail.core.ActionTree;
+import ca.thurn.jgail.core.ActionTreeArena;
 import ca.thurn.jgail.core.AsynchronousAgent;
+import ca.thurn.jgail.core.ConcurrentActionTree;
 import ca.thurn.jgail.core.Evaluator;
+import ca.thurn.jgail.core.HashableState;
+import ca.thurn.jgail.core.Instrumented;
+import ca.thurn.jgail.core.OpeningBook;
+import ca.thurn.jgail.core.SearchListener;
+import ca.thurn.jgail.core.SearchStats;
+import ca.thurn.jgail.core.Seedable;
 import ca.thurn.jgail.core.State;
 import ca.thurn.jgail.core.WinLossEvaluator;
 
@@ -13,7 +24,7 @@ import ca.thurn.jgail.core.WinLossEvaluator;
  * An agent which selects actions based on the UCT algorithm described in the
  * 2006 paper "Bandit based Monte-Carlo Planning" by Kocsis and Szepesvari.
  */
-public class UctSearch implements AsynchronousAgent {
+public class UctSearch implements AsynchronousAgent, Seedable, Instrumented {
   
   /**
     * This exploration bias value, 1/sqrt(2), was shown by Kocsis and
@@ -21,6 +32,16 @@ public class UctSearch implements AsynchronousAgent {
    */
   public static final double UNIT_EXPLORATION_BIAS = 0.70710678;
   
+  /**
+   * A virtual loss equal to the lowest reward given by a
+   * {@link WinLossEvaluator}.
+   */
+  public static final double UNIT_VIRTUAL_LOSS = 1.0;
+  
+  // Initial length of the buffers which record the path of a simulation
+  // through the game tree. They grow if a simulation goes deeper.
+  private static final int INITIAL_PATH_LENGTH = 64;
+  
   /**
    * Builder for UctSearch agents.
    */
@@ -39,6 +60,20 @@ public class UctSearch implements AsynchronousAgent {
     
     private Evaluator evaluator = new WinLossEvaluator();
     
+    private int numThreads = 1;
+    
+    private boolean treeParallel = false;
+    
+    private double virtualLoss = UNIT_VIRTUAL_LOSS;
+    
+    private boolean useArena = false;
+    
+    private boolean reuseTree = false;
+    
+    private int transpositionTableSize = 0;
+    
+    private SearchListener searchListener = null;
+    
     /**
      * Constructor for UctSearch Builders.
      * 
@@ -52,8 +87,22 @@ public class UctSearch implements AsynchronousAgent {
      * @return A new UctSearch agent based on this builder.
      */
     public UctSearch build() {
+      if (useArena && treeParallel && numThreads > 1) {
+        throw new IllegalStateException("An ActionTreeArena cannot be shared between threads");
+      }
+      if (transpositionTableSize > 0) {
+        if (useArena) {
+          throw new IllegalStateException(
+              "Transposition tables require ActionTree game trees, not arenas");
+        }
+        if (!(stateRepresentation instanceof HashableState)) {
+          throw new IllegalStateException(
+              "Transposition tables require a HashableState state representation");
+        }
+      }
       return new UctSearch(stateRepresentation, numSimulations, explorationBias,
-          discountRate, maxDepth, numInitialVisits, evaluator);
+          discountRate, maxDepth, numInitialVisits, evaluator, numThreads, treeParallel,
+          virtualLoss, useArena, reuseTree, transpositionTableSize, searchListener);
     }
 
     /**
@@ -121,6 +170,105 @@ public class UctSearch implements AsynchronousAgent {
       this.evaluator = evaluator;
       return this;
     }
+
+    /**
+     * @param numThreads Number of threads to search with. Each thread runs
+     *     simulations on its own copy of the root state with its own private
+     *     game tree, and the statistics for the actions available from the
+     *     root are combined across all of the trees before the best action is
+     *     picked. When searching synchronously, the simulation budget is
+     *     divided evenly between the threads. Default value: 1.
+     * @return this.
+     */
+    public Builder setNumThreads(int numThreads) {
+      if (numThreads < 1) {
+        throw new IllegalArgumentException("numThreads must be positive");
+      }
+      this.numThreads = numThreads;
+      return this;
+    }
+    
+    /**
+     * @param treeParallel If true, all threads share a single
+     *     {@link ConcurrentActionTree} instead of each searching a private
+     *     tree, so that deep lines benefit from the combined simulation budget
+     *     of every thread. Nodes which are being visited by a thread are
+     *     penalized with a virtual loss to steer the other threads towards
+     *     different parts of the tree. Has no effect unless numThreads is
+     *     greater than 1. Default value: false.
+     * @return this.
+     */
+    public Builder setTreeParallel(boolean treeParallel) {
+      this.treeParallel = treeParallel;
+      return this;
+    }
+    
+    /**
+     * @param virtualLoss Reward to temporarily subtract from a node while a
+     *     thread is visiting it during a tree-parallel search. Should usually
+     *     be on the order of the largest reward the evaluator can return.
+     *     Default value: {@link UctSearch#UNIT_VIRTUAL_LOSS}.
+     * @return this.
+     */
+    public Builder setVirtualLoss(double virtualLoss) {
+      this.virtualLoss = virtualLoss;
+      return this;
+    }
+    
+    /**
+     * @param useArena If true, store game trees in an {@link ActionTreeArena}
+     *     instead of an {@link ActionTree}. Arenas are reused between
+     *     searches, so once they have grown to the size of a typical search
+     *     tree, running a simulation allocates no tree nodes. Cannot be
+     *     combined with tree-parallel search. Default value: false.
+     * @return this.
+     */
+    public Builder setUseArena(boolean useArena) {
+      this.useArena = useArena;
+      return this;
+    }
+    
+    /**
+     * @param reuseTree If true, keep the game tree from the previous search
+     *     and, if the new root state can be reached from the previous root
+     *     state in at most two actions, continue the search from the
+     *     corresponding subtree instead of from an empty tree. States are
+     *     matched via {@link Object#equals(Object)}, so this has no effect
+     *     unless the state representation overrides it. Default value: false.
+     * @return this.
+     */
+    public Builder setReuseTree(boolean reuseTree) {
+      this.reuseTree = reuseTree;
+      return this;
+    }
+    
+    /**
+     * @param transpositionTableSize If positive, the number of entries in a
+     *     transposition table used to find existing game tree nodes for
+     *     positions which can be reached by more than one sequence of
+     *     actions, so that all of these sequences share the same statistics.
+     *     This turns the game tree into a directed acyclic graph. When the
+     *     table is full, older entries are overwritten. Requires a
+     *     {@link HashableState} state representation and cannot be combined
+     *     with arenas. Default value: 0 (no transposition table).
+     * @return this.
+     */
+    public Builder setTranspositionTableSize(int transpositionTableSize) {
+      this.transpositionTableSize = transpositionTableSize;
+      return this;
+    }
+    
+    /**
+     * @param searchListener Listener to notify about the progress of
+     *     searches, or null. Each thread reports an iteration after every
+     *     {@link SearchListener#SIMULATIONS_PER_ITERATION} simulations. Default
+     *     value: null.
+     * @return this.
+     */
+    public Builder setSearchListener(SearchListener searchListener) {
+      this.searchListener = searchListener;
+      return this;
+    }
   }
   
   /**
@@ -138,12 +286,39 @@ public class UctSearch implements AsynchronousAgent {
   private final int maxDepth;
   private final int numInitialVisits;
   private final Evaluator evaluator;  
-  private final Random random = new Random();
-  private volatile ActionScore asyncResult;
-  private Thread workerThread;
+  private final int numThreads;
+  private final boolean treeParallel;
+  // Virtual loss to apply to nodes during a visit, or 0 if each thread has a
+  // private tree.
+  private final double virtualLoss;
+  private final boolean useArena;
+  // Arenas which are not in use by any search.
+  private final Deque<ActionTreeArena> arenaPool = new ArrayDeque<ActionTreeArena>();
+  private final boolean reuseTree;
+  private final int transpositionTableSize;
+  // Null if there is no listener.
+  private final SearchListener searchListener;
+  // Source of the seeds for each Worker's source of randomness.
+  private final Random seeds = new Random();
+  // Workers and a copy of the root state from the most recent search, if
+  // trees are being reused.
+  private Worker[] retainedWorkers;
+  private State retainedRoot;
+  // Statistics for the root of the most recent search, or null if its root
+  // was not a HashableState.
+  private volatile RootStatistics lastRootStatistics;
+  private volatile SearchStats lastSearchStats = SearchStats.EMPTY;
+  private SearchStats searchStats = SearchStats.EMPTY;
+  private State asyncRoot;
+  // Value of System.nanoTime() when the asynchronous search began.
+  private long asyncStartTime;
+  private Worker[] asyncWorkers;
+  private Thread[] workerThreads;
   
   private UctSearch(State stateRepresentation, int numSimulations, double explorationBias,
-      double discountRate, int maxDepth, int numInitialVisits, Evaluator evaluator) {
+      double discountRate, int maxDepth, int numInitialVisits, Evaluator evaluator,
+      int numThreads, boolean treeParallel, double virtualLoss, boolean useArena,
+      boolean reuseTree, int transpositionTableSize, SearchListener searchListener) {
     this.stateRepresentation = stateRepresentation;
     this.numSimulations = numSimulations;
     this.explorationBias = explorationBias;
@@ -151,6 +326,13 @@ public class UctSearch implements AsynchronousAgent {
     this.maxDepth = maxDepth;
     this.evaluator = evaluator;
     this.numInitialVisits = numInitialVisits;
+    this.numThreads = numThreads;
+    this.treeParallel = numThreads > 1 && treeParallel;
+    this.virtualLoss = this.treeParallel ? virtualLoss : 0.0;
+    this.useArena = useArena;
+    this.reuseTree = reuseTree;
+    this.transpositionTableSize = transpositionTableSize;
+    this.searchListener = searchListener;
   }
 
   /**
@@ -158,8 +340,30 @@ public class UctSearch implements AsynchronousAgent {
    */
   @Override
   public ActionScore pickActionBlocking(int player, State root) {
-    ActionTree actionTree = new ActionTree();
-    return runSimulations(player, root, actionTree, numSimulations);
+    long startTime = System.nanoTime();
+    if (searchListener != null) {
+      searchListener.searchStarted(this, root);
+    }
+    Worker[] workers = startWorkers(player, root);
+    if (numThreads == 1) {
+      workers[0].runMeasuredSimulations(numSimulations);
+      return finish(root, workers, startTime);
+    }
+    Thread[] threads = new Thread[numThreads];
+    for (int i = 0; i < numThreads; ++i) {
+      final Worker worker = workers[i];
+      // Divide the simulation budget as evenly as possible between threads.
+      final int share = numSimulations / numThreads + (i < numSimulations % numThreads ? 1 : 0);
+      threads[i] = new Thread() {
+        @Override
+        public void run() {
+          worker.runMeasuredSimulations(share);
+        }
+      };
+      threads[i].start();
+    }
+    joinAll(threads);
+    return finish(root, workers, startTime);
   }
 
   /**
@@ -175,16 +379,28 @@ public class UctSearch implements AsynchronousAgent {
    */
   @Override
   public void beginAsynchronousSearch(final int player, final State root) {
-    workerThread = (new Thread() {
-      @Override
-      public void run() {
-        ActionTree actionTree = new ActionTree();
-        while (!isInterrupted()) {
-          asyncResult = runSimulations(player, root, actionTree, 1000);         
+    asyncRoot = root;
+    asyncStartTime = System.nanoTime();
+    if (searchListener != null) {
+      searchListener.searchStarted(this, root);
+    }
+    asyncWorkers = startWorkers(player, root.copy());
+    workerThreads = new Thread[numThreads];
+    for (int i = 0; i < numThreads; ++i) {
+      final Worker worker = asyncWorkers[i];
+      workerThreads[i] = new Thread() {
+        @Override
+        public void run() {
+          worker.allocationStart = SearchStats.currentThreadAllocatedBytes();
+          while (!isInterrupted()) {
+            worker.runSimulations(1);
+          }
+          worker.allocatedBytes +=
+              SearchStats.currentThreadAllocatedBytes() - worker.allocationStart;
         }
-      }
-    });
-    workerThread.start();    
+      };
+      workerThreads[i].start();
+    }
   }
   
   /**
@@ -192,147 +408,1090 @@ public class UctSearch implements AsynchronousAgent {
    */
   @Override
   public ActionScore getAsynchronousSearchResult() {
-    workerThread.interrupt();
-    workerThread = null;
-    return asyncResult;
+    for (Thread thread : workerThreads) {
+      thread.interrupt();
+    }
+    // Wait for in-flight simulations to finish so the trees can be read
+    // safely.
+    joinAll(workerThreads);
+    Worker[] workers = asyncWorkers;
+    State root = asyncRoot;
+    workerThreads = null;
+    asyncWorkers = null;
+    asyncRoot = null;
+    return finish(root, workers, asyncStartTime);
+  }
+  
+  /**
+   * {@inheritDoc} Each worker created afterwards draws its seed from this
+   * agent's source of randomness. Combined with a seeded root state, this
+   * makes blocking searches with a single thread reproducible.
+   */
+  @Override
+  public void setSeed(long seed) {
+    seeds.setSeed(seed);
   }
   
   /**
-   * Runs a number of simulations to determine the best action to take from the
-   * provided root state.
+   * Adds the number of visits to and total reward of each action from the
+   * root state of this agent's most recent search to an opening book. Does
+   * nothing if no search has completed or if the root state was not a
+   * {@link HashableState}.
+   *
+   * @param book Opening book to add the statistics to.
+   */
+  public void addRootStatisticsTo(OpeningBook book) {
+    RootStatistics statistics = lastRootStatistics;
+    if (statistics == null) {
+      return;
+    }
+    for (int i = 0; i < statistics.size; ++i) {
+      if (statistics.numVisits[i] > 0) {
+        book.add(statistics.hash, statistics.actions[i], statistics.numVisits[i],
+            statistics.totalRewards[i]);
+      }
+    }
+  }
+  
+  /**
+   * {@inheritDoc} The tree size is the number of game tree nodes created,
+   * summed over the game trees of every thread, so nodes retained from
+   * earlier searches when trees are reused are not included. The number of
+   * nodes is the number of actions performed by simulations, and the number
+   * of cutoffs is the number of simulations stopped by the maximum depth.
+   */
+  @Override
+  public SearchStats getLastSearchStats() {
+    return lastSearchStats;
+  }
+  
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public synchronized SearchStats getSearchStats() {
+    return searchStats;
+  }
+  
+  /**
+   * @return True if this agent's threads all search a single shared tree.
+   */
+  private boolean isTreeParallel() {
+    return treeParallel;
+  }
+  
+  /**
+   * Prepares one Worker per thread to search from the provided root state,
+   * continuing from the previous search's game trees if possible.
    *
    * @param player Player to optimize for.
+   * @param root Root state for the search. If there are multiple threads,
+   *     each Worker receives its own copy.
+   * @return The Workers.
+   */
+  private Worker[] startWorkers(int player, State root) {
+    Worker[] workers;
+    State previousRoot;
+    synchronized (this) {
+      workers = retainedWorkers;
+      previousRoot = retainedRoot;
+      retainedWorkers = null;
+      retainedRoot = null;
+    }
+    long[] path = workers == null ? null : findPath(previousRoot, workers, root);
+    if (path == null) {
+      if (workers != null) {
+        release(workers);
+      }
+      workers = new Worker[numThreads];
+      ActionTree sharedTree = isTreeParallel() ? new ConcurrentActionTree() : null;
+      NodeTable sharedTable = isTreeParallel() ? newNodeTable() : null;
+      for (int i = 0; i < numThreads; ++i) {
+        workers[i] = newWorker(sharedTree, sharedTable);
+      }
+    } else {
+      for (Worker worker : workers) {
+        worker.promote(path);
+      }
+    }
+    for (Worker worker : workers) {
+      worker.start(player, numThreads == 1 ? root : root.copy());
+    }
+    return workers;
+  }
+  
+  /**
+   * Creates a new Worker with an empty game tree of the configured kind.
+   *
+   * @param sharedTree Game tree to share with other workers, or null if the
+   *     worker should have a private tree.
+   * @param sharedTable Transposition table for the shared game tree, or null.
+   * @return The new Worker.
+   */
+  private Worker newWorker(ActionTree sharedTree, NodeTable sharedTable) {
+    if (sharedTree != null) {
+      return new TreeWorker(sharedTree, sharedTable);
+    } else if (useArena) {
+      return new ArenaWorker(acquireArena());
+    } else {
+      return new TreeWorker(new ActionTree(), newNodeTable());
+    }
+  }
+  
+  /**
+   * @return A new transposition table of the configured size, or null if
+   *     transposition tables are disabled.
+   */
+  private NodeTable newNodeTable() {
+    return transpositionTableSize > 0 ? new NodeTable(transpositionTableSize) : null;
+  }
+  
+  /**
+   * @return A new, empty game tree node of the kind used by this agent.
+   */
+  private ActionTree newNode() {
+    return isTreeParallel() ? new ConcurrentActionTree() : new ActionTree();
+  }
+  
+  /**
+   * Finds the actions which lead from the root state of a previous search to
+   * a new root state, considering only sequences of at most two actions that
+   * were explored by the previous search.
+   *
+   * @param previousRoot Root state of the previous search.
+   * @param workers Workers from the previous search.
+   * @param root New root state.
+   * @return The actions leading from previousRoot to root, or null if no such
+   *     actions could be found.
+   */
+  private long[] findPath(State previousRoot, Worker[] workers, State root) {
+    if (previousRoot.equals(root)) {
+      return new long[0];
+    }
+    State state = previousRoot.copy();
+    State.ActionIterator firstIterator = state.getActionIterator();
+    while (firstIterator.hasNextAction()) {
+      long first = firstIterator.nextAction();
+      if (!hasNode(workers, first)) {
+        continue;
+      }
+      long firstUndoToken = state.perform(first);
+      if (state.equals(root)) {
+        return new long[] {first};
+      }
+      State.ActionIterator secondIterator = state.getActionIterator();
+      while (secondIterator.hasNextAction()) {
+        long second = secondIterator.nextAction();
+        if (!hasNode(workers, first, second)) {
+          continue;
+        }
+        long secondUndoToken = state.perform(second);
+        boolean found = state.equals(root);
+        state.undo(second, secondUndoToken);
+        if (found) {
+          return new long[] {first, second};
+        }
+      }
+      state.undo(first, firstUndoToken);
+    }
+    return null;
+  }
+  
+  /**
+   * @param workers Some workers.
+   * @param path A sequence of actions from the root state.
+   * @return True if any of the workers' game trees has a node for this
+   *     sequence of actions.
+   */
+  private static boolean hasNode(Worker[] workers, long... path) {
+    for (Worker worker : workers) {
+      if (worker.hasNode(path)) {
+        return true;
+      }
+    }
+    return false;
+  }
+  
+  /**
+   * @return An empty ActionTreeArena which is not in use by any other
+   *     search.
+   */
+  private ActionTreeArena acquireArena() {
+    ActionTreeArena arena;
+    synchronized (arenaPool) {
+      arena = arenaPool.poll();
+    }
+    if (arena == null) {
+      return new ActionTreeArena();
+    }
+    arena.clear();
+    return arena;
+  }
+  
+  /**
+   * Makes an arena available for reuse by future searches.
+   *
+   * @param arena An arena which is no longer in use.
+   */
+  private void releaseArena(ActionTreeArena arena) {
+    synchronized (arenaPool) {
+      arenaPool.push(arena);
+    }
+  }
+  
+  /**
+   * Picks the best action once the provided workers have stopped running
+   * simulations and then releases their resources.
+   *
    * @param root Root state.
-   * @param actionTree ActionTree tracking game tree rewards.
-   * @param number Number of simulations to run.
+   * @param workers Workers which have finished running simulations from this
+   *     root state.
+   * @param startTime Value of System.nanoTime() when the search began.
    * @return An ActionScore indicating the best action to take from this state,
-   *     along with its score.
+   *     along with its score, or null if no simulations were run.
    */
-  private ActionScore runSimulations(int player, State root, ActionTree actionTree, int number) {
-    for (int i = 0; i < number; ++i) {
-      runSimulation(actionTree, player, root.copy(), 0);
+  private ActionScore finish(State root, Worker[] workers, long startTime) {
+    // Workers sharing a tree all report the same statistics.
+    Worker[] sources = isTreeParallel() ? new Worker[] {workers[0]} : workers;
+    int numVisits = 0;
+    for (Worker worker : sources) {
+      numVisits += worker.getNumVisits();
+    }
+    ActionScore result = numVisits == 0 ? null : bestAction(root, sources);
+    recordStats(workers, startTime);
+    if (reuseTree) {
+      Worker[] displaced;
+      synchronized (this) {
+        displaced = retainedWorkers;
+        retainedWorkers = workers;
+        retainedRoot = root.copy();
+      }
+      if (displaced != null) {
+        release(displaced);
+      }
+    } else {
+      release(workers);
     }
+    return result;
+  }
+  
+  /**
+   * Combines the statistics counted by each worker for a search which has
+   * just finished, and adds them to the totals.
+   *
+   * @param workers Workers which have finished running simulations.
+   * @param startTime Value of System.nanoTime() when the search began.
+   */
+  private void recordStats(Worker[] workers, long startTime) {
+    long elapsedNanos = System.nanoTime() - startTime;
+    long simulations = 0;
+    long nodes = 0;
+    int depth = 0;
+    // Workers sharing a tree each count only the nodes they created.
+    long treeSize = 0;
+    long allocatedBytes = 0;
+    long cutoffs = 0;
+    long evaluations = 0;
+    for (Worker worker : workers) {
+      simulations += worker.numSimulations;
+      nodes += worker.numNodes;
+      depth = Math.max(depth, worker.deepestNode);
+      treeSize += worker.getNumNodesCreated();
+      allocatedBytes += worker.allocatedBytes;
+      cutoffs += worker.numCutoffs;
+      evaluations += worker.numEvaluations;
+    }
+    SearchStats stats = SearchStats.builder()
+        .setNumSearches(1)
+        .setNumSimulations(simulations)
+        .setNumNodes(nodes)
+        .setMaxDepth(depth)
+        .setTreeSize(treeSize)
+        .setElapsedNanos(elapsedNanos)
+        .setAllocatedBytes(allocatedBytes)
+        .setNumCutoffs(cutoffs)
+        .setNumEvaluations(evaluations)
+        .build();
+    lastSearchStats = stats;
+    synchronized (this) {
+      searchStats = searchStats.plus(stats);
+    }
+    if (searchListener != null) {
+      searchListener.searchFinished(this, stats);
+    }
+  }
+  
+  /**
+   * Releases the resources held by some workers.
+   *
+   * @param workers Workers which are no longer needed.
+   */
+  private static void release(Worker[] workers) {
+    for (Worker worker : workers) {
+      worker.release();
+    }
+  }
+  
+  /**
+   * Picks the action from the root state with the highest average reward,
+   * combining the statistics from the game trees of each of the provided
+   * workers.
+   *
+   * @param root Root state.
+   * @param workers Workers with distinct game trees which have finished
+   *     running simulations from this root state.
+   * @return An ActionScore indicating the best action to take from this state,
+   *     along with its score.
+   */
+  private ActionScore bestAction(State root, Worker[] workers) {
     double bestPayoff = Double.NEGATIVE_INFINITY;
     long bestAction = -1;
+    RootStatistics statistics = root instanceof HashableState ?
+        new RootStatistics(((HashableState)root).hash()) : null;
     State.ActionIterator actionIterator = root.getActionIterator();
     while (actionIterator.hasNextAction()) {
       long action = actionIterator.nextAction();
-      ActionTree child = actionTree.child(action);
-      double estimatedPayoff = averageReward(child);
+      int numVisits = 0;
+      double totalReward = 0.0;
+      for (Worker worker : workers) {
+        numVisits += worker.getChildNumVisits(action);
+        totalReward += worker.getChildTotalReward(action);
+      }
+      if (statistics != null) {
+        statistics.add(action, numVisits, totalReward);
+      }
+      double estimatedPayoff = averageReward(numVisits, totalReward);
       if (estimatedPayoff > bestPayoff) {
         bestPayoff = estimatedPayoff;
         bestAction = action;
       }
     }
+    lastRootStatistics = statistics;
     return new ActionScore(bestAction, bestPayoff);
   }
   
-  
   /**
-   * Runs a simulation to determine the total payoff associated with being at
-   * the provided state.
+   * Waits for all of the provided threads to terminate. If the calling thread
+   * is interrupted while waiting, the threads are interrupted as well and the
+   * calling thread's interrupt status is restored once they have terminated.
    *
-   * @param actionTree An ActionTree tracking the rewards at each game tree
-   *     position.
-   * @param player The player we are trying to optimize for.
-   * @param state The current state.
-   * @param depth The current depth in the search tree.
-   * @return The heuristic value of being in this state. 
-   */
-  private double runSimulation(ActionTree actionTree, int player, State state,
-      int depth) {
-    if (depth > maxDepth || state.isTerminal()) {
-      double reward = -evaluator.evaluate(player, state);
-      updateTree(actionTree, reward);
-      return reward;
-    } else if (actionTree.getNumVisits() < numInitialVisits) {
-      double reward = -playRandomGame(player, state, depth + 1);
-      updateTree(actionTree, reward);
-      return reward;
-    } else {
-      long action = uctSelectAction(actionTree, state);
-      state.perform(action);
-      final double reward = discountRate *
-          -runSimulation(actionTree.child(action), state.getCurrentPlayer(), state, depth + 1);
-      updateTree(actionTree, reward);
-      return reward;      
+   * @param threads Threads to wait for.
+   */
+  private static void joinAll(Thread[] threads) {
+    boolean interrupted = false;
+    for (int i = 0; i < threads.length; ++i) {
+      try {
+        threads[i].join();
+      } catch (InterruptedException e) {
+        interrupted = true;
+        for (Thread thread : threads) {
+          thread.interrupt();
+        }
+        i--;
+      }
+    }
+    if (interrupted) {
+      Thread.currentThread().interrupt();
     }
   }
   
   /**
-   * Play a random game and return the evaluated outcome for the provided
-   * player.
-   * 
-   * @param player Player to evaluate the end result for.
-   * @param state Starting game state.
-   * @param depth Maximum depth to simulate before quitting.
-   * @return The score returned by the evaluator for the terminal state in the
-   *     random game.
+   * Runs simulations from a single copy of the root state. Each Worker has
+   * its own source of randomness, so distinct Workers can be run concurrently
+   * on different threads provided that their game trees are either distinct
+   * or are ConcurrentActionTrees.
    */
-  private double playRandomGame(int player, State state, int depth) {
-    if (depth > maxDepth || state.isTerminal()) {
+  private abstract class Worker {
+    final Random random = new Random(seeds.nextLong());
+    int player;
+    State root;
+    // Statistics for the current search, which are only updated by the
+    // thread running this worker's simulations.
+    long numSimulations;
+    long numNodes;
+    int deepestNode;
+    long allocatedBytes;
+    long numCutoffs;
+    long numEvaluations;
+    // Bytes allocated by the thread running this worker's simulations, when
+    // it began running the current batch of them.
+    long allocationStart;
+    // Value of System.nanoTime() when this worker was last started.
+    long startTime;
+    
+    /**
+     * Sets the state to run simulations from, and resets the statistics.
+     *
+     * @param player Player to optimize for.
+     * @param root Root state. This state is never mutated.
+     */
+    void start(int player, State root) {
+      this.player = player;
+      this.root = root;
+      numSimulations = 0;
+      numNodes = 0;
+      deepestNode = 0;
+      allocatedBytes = 0;
+      numCutoffs = 0;
+      numEvaluations = 0;
+      startTime = System.nanoTime();
+    }
+    
+    /**
+     * Runs a number of simulations from the root state, updating this
+     * worker's game tree with the results.
+     *
+     * @param number Number of simulations to run.
+     */
+    abstract void runSimulations(int number);
+    
+    /**
+     * @return A copy of the root state to run a simulation on. Copies which
+     *     are Seedable are seeded from this worker's source of randomness, so
+     *     that each simulation makes its own random choices.
+     */
+    State copyRoot() {
+      State state = root.copy();
+      if (state instanceof Seedable) {
+        ((Seedable)state).setSeed(random.nextLong());
+      }
+      return state;
+    }
+    
+    /**
+     * Counts a simulation which has just finished, reporting an iteration to
+     * the search listener if one has completed.
+     */
+    void countSimulation() {
+      numSimulations++;
+      if (searchListener != null &&
+          numSimulations % SearchListener.SIMULATIONS_PER_ITERATION == 0) {
+        SearchStats stats = SearchStats.builder()
+            .setNumSimulations(numSimulations)
+            .setNumNodes(numNodes)
+            .setMaxDepth(deepestNode)
+            .setTreeSize(getNumNodesCreated())
+            .setElapsedNanos(System.nanoTime() - startTime)
+            .setAllocatedBytes(allocatedBytes +
+                SearchStats.currentThreadAllocatedBytes() - allocationStart)
+            .setNumCutoffs(numCutoffs)
+            .setNumEvaluations(numEvaluations)
+            .build();
+        searchListener.iterationCompleted(UctSearch.this,
+            (int)(numSimulations / SearchListener.SIMULATIONS_PER_ITERATION), stats);
+      }
+    }
+    
+    /**
+     * Runs simulations via {@link Worker#runSimulations(int)}, adding the
+     * memory allocated by the calling thread meanwhile to the statistics.
+     *
+     * @param number Number of simulations to run.
+     */
+    void runMeasuredSimulations(int number) {
+      allocationStart = SearchStats.currentThreadAllocatedBytes();
+      runSimulations(number);
+      allocatedBytes += SearchStats.currentThreadAllocatedBytes() - allocationStart;
+    }
+    
+    /**
+     * @return Total number of visits recorded to the root of this worker's
+     *     game tree.
+     */
+    abstract int getNumVisits();
+    
+    /**
+     * @param action An action from the root state.
+     * @return Total number of visits recorded to the game tree node for this
+     *     action.
+     */
+    abstract int getChildNumVisits(long action);
+    
+    /**
+     * @param action An action from the root state.
+     * @return Total reward associated with the game tree node for this
+     *     action.
+     */
+    abstract double getChildTotalReward(long action);
+    
+    /**
+     * @return Number of game tree nodes this worker has created since it was
+     *     last started.
+     */
+    abstract int getNumNodesCreated();
+    
+    /**
+     * @param path A sequence of actions from the root state.
+     * @return True if this worker's game tree contains a node for this
+     *     sequence of actions.
+     */
+    abstract boolean hasNode(long[] path);
+    
+    /**
+     * Makes the game tree node for the provided sequence of actions the new
+     * root of this worker's game tree, discarding the rest of the tree. If
+     * there is no such node, the game tree is emptied instead.
+     *
+     * @param path A sequence of actions from the root state.
+     */
+    abstract void promote(long[] path);
+    
+    /**
+     * Releases any resources held by this worker. The worker can no longer be
+     * used afterwards.
+     */
+    void release() {
+    }
+    
+    /**
+     * Play a random game and return the evaluated outcome for the provided
+     * player.
+     * 
+     * @param player Player to evaluate the end result for.
+     * @param state Starting game state.
+     * @param depth Depth of the starting game state. The game stops once it
+     *     is deeper than the maximum depth.
+     * @return The score returned by the evaluator for the terminal state in the
+     *     random game.
+     */
+    double playRandomGame(int player, State state, int depth) {
+      while (depth <= maxDepth && !state.isTerminal()) {
+        state.perform(state.getRandomAction());
+        numNodes++;
+        depth++;
+      }
+      if (depth > maxDepth) {
+        numCutoffs++;
+      }
+      numEvaluations++;
       return evaluator.evaluate(player, state);
-    }    
-    long action = state.getRandomAction();
-    state.perform(action);
-    return playRandomGame(player, state, depth + 1);   
+    }
+    
+    /**
+     * @param numVisits Number of visits to the current state.
+     * @param childNumVisits Number of visits to the state resulting from a
+     *     proposed action.
+     * @param childTotalReward Total reward associated with the state
+     *     resulting from the proposed action.
+     * @return The UCT value of the proposed action, with random noise added
+     *     to break ties.
+     */
+    double uctValue(int numVisits, int childNumVisits, double childTotalReward) {
+      double uctValue = averageReward(childNumVisits, childTotalReward) +
+          explorationBias(numVisits, childNumVisits);
+      // We multiply the result by 1000000 and then add a random double from
+      // the interval [0,1] in order to break ties.
+      return (uctValue * 1000000) + random.nextDouble();
+    }
   }
   
   /**
-   * Updates the tree at the given position, adding the given reward and
-   * marking this node as visited
-   *
-   * @param actionTree An ActionTree tracking the rewards at each game tree
-   *     position.
-   * @param reward The reward associated with this position.
+   * A Worker which stores its game tree in an {@link ActionTree}.
+   */
+  private class TreeWorker extends Worker {
+    private final NodeTable nodeTable;
+    private ActionTree actionTree;
+    private int numNodesCreated;
+    // The nodes visited by the current simulation, from the root down.
+    private ActionTree[] path = new ActionTree[INITIAL_PATH_LENGTH];
+    
+    /**
+     * @param actionTree Game tree to update with simulation results.
+     * @param nodeTable Transposition table for this game tree, or null.
+     */
+    TreeWorker(ActionTree actionTree, NodeTable nodeTable) {
+      this.actionTree = actionTree;
+      this.nodeTable = nodeTable;
+    }
+    
+    @Override
+    void start(int player, State root) {
+      super.start(player, root);
+      numNodesCreated = 0;
+    }
+    
+    @Override
+    void runSimulations(int number) {
+      for (int i = 0; i < number; ++i) {
+        runSimulation(actionTree, player, copyRoot());
+        countSimulation();
+      }
+    }
+    
+    @Override
+    int getNumVisits() {
+      return actionTree.getNumVisits();
+    }
+    
+    @Override
+    int getChildNumVisits(long action) {
+      ActionTree child = actionTree.getChild(action);
+      return child == null ? 0 : child.getNumVisits();
+    }
+    
+    @Override
+    double getChildTotalReward(long action) {
+      ActionTree child = actionTree.getChild(action);
+      return child == null ? 0.0 : child.getTotalReward();
+    }
+    
+    @Override
+    int getNumNodesCreated() {
+      return numNodesCreated;
+    }
+    
+    @Override
+    boolean hasNode(long[] path) {
+      return find(path) != null;
+    }
+    
+    @Override
+    void promote(long[] path) {
+      ActionTree node = find(path);
+      // A shared tree is always promoted consistently, since findPath()
+      // only returns paths which exist in it.
+      actionTree = node == null ? newNode() : node;
+    }
+    
+    /**
+     * @param path A sequence of actions from the root state.
+     * @return The game tree node for this sequence of actions, or null if
+     *     there is no such node.
+     */
+    private ActionTree find(long[] path) {
+      ActionTree result = actionTree;
+      for (int i = 0; i < path.length && result != null; ++i) {
+        result = result.getChild(path[i]);
+      }
+      return result;
+    }
+  
+    /**
+     * Runs a simulation to determine the total payoff associated with being at
+     * the provided state. The simulation descends the game tree by selecting
+     * actions via the UCT algorithm, recording the nodes it visits in the
+     * path buffer, until it reaches a terminal state, the maximum depth or a
+     * node which needs more initial visits, where it plays a random game.
+     * The reward is then propagated back up the path.
+     *
+     * @param actionTree An ActionTree tracking the rewards at each game tree
+     *     position.
+     * @param player The player we are trying to optimize for.
+     * @param state The current state.
+     * @return The heuristic value of being in this state. 
+     */
+    private double runSimulation(ActionTree actionTree, int player, State state) {
+      int length = 0;
+      int depth = 0;
+      double reward;
+      // Whether the last node on the path is being visited, rather than just
+      // evaluated.
+      boolean visitingLast;
+      while (true) {
+        if (depth > deepestNode) {
+          deepestNode = depth;
+        }
+        if (length == path.length) {
+          path = Arrays.copyOf(path, length * 2);
+        }
+        path[length++] = actionTree;
+        if (depth > maxDepth || state.isTerminal()) {
+          if (depth > maxDepth) {
+            numCutoffs++;
+          }
+          numEvaluations++;
+          reward = -evaluator.evaluate(player, state);
+          visitingLast = false;
+          break;
+        } else if (actionTree.getNumVisits() < numInitialVisits) {
+          beginVisit(actionTree);
+          reward = -playRandomGame(player, state, depth + 1);
+          visitingLast = true;
+          break;
+        }
+        beginVisit(actionTree);
+        long action = uctSelectAction(actionTree, state);
+        state.perform(action);
+        numNodes++;
+        actionTree = child(actionTree, action, state);
+        player = state.getCurrentPlayer();
+        depth++;
+      }
+      if (visitingLast) {
+        endVisit(path[length - 1]);
+      }
+      updateTree(path[length - 1], reward);
+      for (int i = length - 2; i >= 0; --i) {
+        reward = discountRate * -reward;
+        endVisit(path[i]);
+        updateTree(path[i], reward);
+      }
+      // Don't hold on to nodes which may be discarded from the tree.
+      Arrays.fill(path, 0, length, null);
+      return reward;
+    }
+    
+    /**
+     * Return the child node associated with this action, creating one if it
+     * does not already exist. If there is a transposition table, an existing
+     * node for the resulting state is used as the new child where possible.
+     *
+     * @param actionTree An ActionTree tracking the rewards at each game tree
+     *     position.
+     * @param action Action to retrieve the corresponding child node for.
+     * @param state The state resulting from performing this action.
+     * @return The child node.
+     */
+    private ActionTree child(ActionTree actionTree, long action, State state) {
+      ActionTree result = actionTree.getChild(action);
+      if (result == null) {
+        ActionTree node = nodeTable == null ? null : nodeTable.get(((HashableState)state).hash());
+        boolean created = node == null;
+        if (created) {
+          node = newNode();
+          if (nodeTable != null) {
+            nodeTable.put(((HashableState)state).hash(), node);
+          }
+        }
+        result = actionTree.addChild(action, node);
+        if (created && result == node) {
+          numNodesCreated++;
+        }
+      }
+      return result;
+    }
+    
+    /**
+     * Updates the tree at the given position, adding the given reward and
+     * marking this node as visited
+     *
+     * @param actionTree An ActionTree tracking the rewards at each game tree
+     *     position.
+     * @param reward The reward associated with this position.
+     */
+    private void updateTree(ActionTree actionTree, final double reward) {
+      actionTree.incrementNumVisits();
+      actionTree.addReward(reward);
+    }
+    
+    /**
+     * Marks the start of a visit to this game tree position which other
+     * threads might observe, applying a virtual loss in tree-parallel mode.
+     *
+     * @param actionTree An ActionTree tracking the rewards at each game tree
+     *     position.
+     */
+    private void beginVisit(ActionTree actionTree) {
+      if (virtualLoss != 0.0) {
+        actionTree.addVirtualLoss(virtualLoss);
+      }
+    }
+    
+    /**
+     * Marks the end of a visit started via {@link TreeWorker#beginVisit}. The
+     * outcome of the visit should then be recorded via
+     * {@link TreeWorker#updateTree}.
+     *
+     * @param actionTree An ActionTree tracking the rewards at each game tree
+     *     position.
+     */
+    private void endVisit(ActionTree actionTree) {
+      if (virtualLoss != 0.0) {
+        actionTree.removeVirtualLoss(virtualLoss);
+      }
+    }
+  
+    /**
+     * Selects an action to take from the provided state via the UCT algorithm.
+     *
+     * @param actionTree An ActionTree tracking the rewards at each game tree
+     *     position.
+     * @param state The current state.
+     * @return The action to take.
+     */
+    private long uctSelectAction(ActionTree actionTree, State state) {
+      // We iterate through each action and return the one that maximizes
+      // uctValue.
+      double maximum = Double.NEGATIVE_INFINITY;
+      long result = -1;
+      State.ActionIterator actionIterator = state.getActionIterator();
+      while (actionIterator.hasNextAction()) {
+        long action = actionIterator.nextAction();
+        // Children are only created once they are actually visited.
+        ActionTree child = actionTree.getChild(action);
+        double uctValue = child == null ?
+            uctValue(actionTree.getNumVisits(), 0, 0.0) :
+            uctValue(actionTree.getNumVisits(), child.getNumVisits(), child.getTotalReward());
+        if (uctValue > maximum) {
+          maximum = uctValue;
+          result = action;
+        }
+      }
+      return result;
+    }
+  }
+  
+  /**
+   * A Worker which stores its game tree in an {@link ActionTreeArena}
+   * borrowed from this agent's pool of arenas.
    */
-  private void updateTree(ActionTree actionTree, final double reward) {;
-    actionTree.incrementNumVisits();
-    actionTree.addReward(reward);
+  private class ArenaWorker extends Worker {
+    private ActionTreeArena arena;
+    // Size of the arena when the worker was last started.
+    private int initialSize;
+    // Arena indices of the nodes visited by the current simulation, from the
+    // root down.
+    private int[] path = new int[INITIAL_PATH_LENGTH];
+    
+    /**
+     * @param arena Empty arena to store the game tree in.
+     */
+    ArenaWorker(ActionTreeArena arena) {
+      this.arena = arena;
+    }
+    
+    @Override
+    void start(int player, State root) {
+      super.start(player, root);
+      initialSize = arena.size();
+    }
+    
+    @Override
+    void runSimulations(int number) {
+      for (int i = 0; i < number; ++i) {
+        runSimulation(arena.getRoot(), player, copyRoot());
+        countSimulation();
+      }
+    }
+    
+    @Override
+    int getNumVisits() {
+      return arena.getNumVisits(arena.getRoot());
+    }
+    
+    @Override
+    int getChildNumVisits(long action) {
+      int child = arena.findChild(arena.getRoot(), action);
+      return child == ActionTreeArena.NO_NODE ? 0 : arena.getNumVisits(child);
+    }
+    
+    @Override
+    double getChildTotalReward(long action) {
+      int child = arena.findChild(arena.getRoot(), action);
+      return child == ActionTreeArena.NO_NODE ? 0.0 : arena.getTotalReward(child);
+    }
+    
+    @Override
+    int getNumNodesCreated() {
+      return arena.size() - initialSize;
+    }
+    
+    @Override
+    boolean hasNode(long[] path) {
+      return find(path) != ActionTreeArena.NO_NODE;
+    }
+    
+    @Override
+    void promote(long[] path) {
+      int node = find(path);
+      if (node == ActionTreeArena.NO_NODE) {
+        arena.clear();
+      } else if (node != arena.getRoot()) {
+        // Compact the subtree into a fresh arena so that the space used by
+        // the rest of the old tree can be reclaimed.
+        ActionTreeArena promoted = acquireArena();
+        promoted.copySubtree(arena, node);
+        releaseArena(arena);
+        arena = promoted;
+      }
+    }
+    
+    @Override
+    void release() {
+      releaseArena(arena);
+    }
+    
+    /**
+     * @param path A sequence of actions from the root state.
+     * @return The arena index of the game tree node for this sequence of
+     *     actions, or {@link ActionTreeArena#NO_NODE} if there is no such
+     *     node.
+     */
+    private int find(long[] path) {
+      int result = arena.getRoot();
+      for (int i = 0; i < path.length && result != ActionTreeArena.NO_NODE; ++i) {
+        result = arena.findChild(result, path[i]);
+      }
+      return result;
+    }
+  
+    /**
+     * Runs a simulation to determine the total payoff associated with being at
+     * the provided state, in the same way as
+     * {@link TreeWorker#runSimulation(ActionTree, int, State)}.
+     *
+     * @param node Arena index of the game tree node for this state.
+     * @param player The player we are trying to optimize for.
+     * @param state The current state.
+     * @return The heuristic value of being in this state. 
+     */
+    private double runSimulation(int node, int player, State state) {
+      int length = 0;
+      int depth = 0;
+      double reward;
+      while (true) {
+        if (depth > deepestNode) {
+          deepestNode = depth;
+        }
+        if (length == path.length) {
+          path = Arrays.copyOf(path, length * 2);
+        }
+        path[length++] = node;
+        if (depth > maxDepth || state.isTerminal()) {
+          if (depth > maxDepth) {
+            numCutoffs++;
+          }
+          numEvaluations++;
+          reward = -evaluator.evaluate(player, state);
+          break;
+        } else if (arena.getNumVisits(node) < numInitialVisits) {
+          reward = -playRandomGame(player, state, depth + 1);
+          break;
+        }
+        long action = uctSelectAction(node, state);
+        state.perform(action);
+        numNodes++;
+        node = arena.child(node, action);
+        player = state.getCurrentPlayer();
+        depth++;
+      }
+      arena.incrementNumVisits(path[length - 1]);
+      arena.addReward(path[length - 1], reward);
+      for (int i = length - 2; i >= 0; --i) {
+        reward = discountRate * -reward;
+        arena.incrementNumVisits(path[i]);
+        arena.addReward(path[i], reward);
+      }
+      return reward;
+    }
+  
+    /**
+     * Selects an action to take from the provided state via the UCT algorithm.
+     *
+     * @param node Arena index of the game tree node for this state.
+     * @param state The current state.
+     * @return The action to take.
+     */
+    private long uctSelectAction(int node, State state) {
+      double maximum = Double.NEGATIVE_INFINITY;
+      long result = -1;
+      State.ActionIterator actionIterator = state.getActionIterator();
+      while (actionIterator.hasNextAction()) {
+        long action = actionIterator.nextAction();
+        int child = arena.findChild(node, action);
+        double uctValue = child == ActionTreeArena.NO_NODE ?
+            uctValue(arena.getNumVisits(node), 0, 0.0) :
+            uctValue(arena.getNumVisits(node), arena.getNumVisits(child),
+                arena.getTotalReward(child));
+        if (uctValue > maximum) {
+          maximum = uctValue;
+          result = action;
+        }
+      }
+      return result;
+    }
   }
-
+  
   /**
-   * Selects an action to take from the provided state via the UCT algorithm.
-   *
-   * @param actionTree An ActionTree tracking the rewards at each game tree
-   *     position.
-   * @param state The current state.
-   * @return The action to take.
-   */
-  private long uctSelectAction(ActionTree actionTree, State state) {
-    // We iterate through each action and return the one that maximizes
-    // uctValue.
-    double maximum = Double.NEGATIVE_INFINITY;
-    long result = -1;
-    State.ActionIterator actionIterator = state.getActionIterator();
-    while (actionIterator.hasNextAction()) {
-      long action = actionIterator.nextAction();
-      ActionTree child = actionTree.child(action);
-      double uctValue = averageReward(child) +
-          explorationBias(actionTree.getNumVisits(), child.getNumVisits());
-      // We multiply the result by 1000000 and then add a random double from
-      // the interval [0,1] in order to break ties.
-      uctValue = (uctValue * 1000000) + random.nextDouble();
-      if (uctValue > maximum) {
-        maximum = uctValue;
-        result = action;
+   * A fixed-size transposition table mapping state hashes to game tree nodes.
+   * When two hashes map to the same slot, the newer entry replaces the older
+   * one. Safe for concurrent use: since entries are immutable, a thread
+   * always observes a consistent hash and node pair.
+   */
+  private class NodeTable {
+    private final Entry[] entries;
+    
+    /**
+     * @param size Number of entries in the table.
+     */
+    NodeTable(int size) {
+      this.entries = new Entry[size];
+    }
+    
+    /**
+     * @param hash A state hash.
+     * @return The game tree node for states with this hash, or null if it is
+     *     not present in the table.
+     */
+    ActionTree get(long hash) {
+      Entry entry = entries[slot(hash)];
+      return entry != null && entry.hash == hash ? entry.node : null;
+    }
+    
+    /**
+     * @param hash A state hash.
+     * @param node The game tree node for states with this hash.
+     */
+    void put(long hash, ActionTree node) {
+      entries[slot(hash)] = new Entry(hash, node);
+    }
+    
+    private int slot(long hash) {
+      return (int)((hash >>> 1) % entries.length);
+    }
+  }
+  
+  /**
+   * The combined statistics of each action from the root state of a search.
+   */
+  private static class RootStatistics {
+    final long hash;
+    long[] actions = new long[8];
+    int[] numVisits = new int[8];
+    double[] totalRewards = new double[8];
+    int size;
+    
+    RootStatistics(long hash) {
+      this.hash = hash;
+    }
+    
+    void add(long action, int actionNumVisits, double actionTotalReward) {
+      if (size == actions.length) {
+        actions = Arrays.copyOf(actions, size * 2);
+        numVisits = Arrays.copyOf(numVisits, size * 2);
+        totalRewards = Arrays.copyOf(totalRewards, size * 2);
       }
+      actions[size] = action;
+      numVisits[size] = actionNumVisits;
+      totalRewards[size] = actionTotalReward;
+      size++;
+    }
+  }
+  
+  /**
+   * An entry in a {@link NodeTable}.
+   */
+  private static class Entry {
+    private final long hash;
+    private final ActionTree node;
+    
+    Entry(long hash, ActionTree node) {
+      this.hash = hash;
+      this.node = node;
     }
-    return result;
   }
   
   /**
-   * @param actionTree An ActionTree tracking the rewards at each game tree
-   *     position.
+   * @param numVisits Number of visits to a game tree node.
+   * @param totalReward Total reward associated with the game tree node.
    * @return The average reward of visiting this state, or 0 if this state has
    *     never been visited before;
    */
-  private double averageReward(ActionTree actionTree) {
-    int numVisits = actionTree.getNumVisits();
+  private static double averageReward(int numVisits, double totalReward) {
     if (numVisits == 0) {
       return 0;
     } else {
-      return actionTree.getTotalReward() / numVisits;
+      return totalReward / numVisits;
     }
   }
 
@@ -368,6 +1527,12 @@ public class UctSearch implements AsynchronousAgent {
     builder.append(discountRate);
     builder.append(", maxDepth=");
     builder.append(maxDepth);
+    builder.append(", numThreads=");
+    builder.append(numThreads);
+    if (isTreeParallel()) {
+      builder.append(", virtualLoss=");
+      builder.append(virtualLoss);
+    }
     builder.append("]");
     return builder.toString();
   }
@@ -1,62 +1,126 @@
 package ca.thurn.jgail.connect4;
 
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.List;
 import java.util.Random;
 
 import ca.thurn.jgail.core.Copyable;
+import ca.thurn.jgail.core.CopyableRandom;
+import ca.thurn.jgail.core.HashableState;
 import ca.thurn.jgail.core.Player;
+import ca.thurn.jgail.core.Seedable;
 import ca.thurn.jgail.core.State;
 
 /**
  * State class for a game of Connect4.
  */
-public class C4State implements State {
+public class C4State implements HashableState, Seedable {
   
   private static final int BOARD_HEIGHT = 6;
   private static final int BOARD_WIDTH = 7;  
-  private static final List<Long> p1Actions;
-  private static final List<Long> p2Actions;  
+  // Bitmask with a bit set for every column.
+  private static final int ALL_COLUMNS = (1 << BOARD_WIDTH) - 1;
+  // Actions indexed as [player][column].
+  private static final long[][] ACTIONS = new long[Player.PLAYER_TWO + 1][BOARD_WIDTH];
   static {
-    p1Actions = new ArrayList<Long>();
     for (int i = 0; i < BOARD_WIDTH; ++i) {
-      p1Actions.add(C4Action.create(Player.PLAYER_ONE, i));            
+      ACTIONS[Player.PLAYER_ONE][i] = C4Action.create(Player.PLAYER_ONE, i);
+      ACTIONS[Player.PLAYER_TWO][i] = C4Action.create(Player.PLAYER_TWO, i);
     }
-
-    p2Actions = new ArrayList<Long>();
-    for (int i = 0; i < BOARD_WIDTH; ++i) {
-      p2Actions.add(C4Action.create(Player.PLAYER_TWO, i));   
+  }
+  
+  // Zobrist keys, indexed as [player][column][row]. The keys are generated
+  // from a fixed seed so that hashes are stable between runs.
+  private static final long[][][] PIECE_KEYS =
+      new long[Player.PLAYER_TWO + 1][BOARD_WIDTH][BOARD_HEIGHT];
+  private static final long PLAYER_TWO_KEY;
+  static {
+    Random keyGenerator = new Random(0x5EED);
+    for (int player = Player.PLAYER_ONE; player <= Player.PLAYER_TWO; ++player) {
+      for (int column = 0; column < BOARD_WIDTH; ++column) {
+        for (int row = 0; row < BOARD_HEIGHT; ++row) {
+          PIECE_KEYS[player][column][row] = keyGenerator.nextLong();
+        }
+      }
     }
+    PLAYER_TWO_KEY = keyGenerator.nextLong();
   }
   
   /**
-   * Direction on the game board.
+   * Iterates over a snapshot of the legal columns, so that it is unaffected
+   * by actions performed while it is in use.
    */
-  private static enum Direction {
-    N, NE, E, SE, S, SW, W, NW
+  private static class ColumnIterator implements State.ActionIterator {
+    private final long[] actions;
+    private int remainingColumns;
+    
+    /**
+     * @param actions Actions for the current player, indexed by column.
+     * @param legalColumns Bitmask of the columns to iterate over.
+     */
+    ColumnIterator(long[] actions, int legalColumns) {
+      this.actions = actions;
+      this.remainingColumns = legalColumns;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long nextAction() {
+      int column = Integer.numberOfTrailingZeros(remainingColumns);
+      remainingColumns &= remainingColumns - 1;
+      return actions[column];
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean hasNextAction() {
+      return remainingColumns != 0;
+    }
   }
   
-  // Indexed as board[column][row] with the origin being in the bottom left,
-  // null represents an empty space.
-  private int[][] board;
-  private List<Long> actions;
+  // Pieces are stored in bitboards with 7 bits per column, with the bit for
+  // column c and row r at index 7 * c + r. The seventh bit of each column is
+  // always empty, so that shifting a line of pieces past the top of a column
+  // can never make it wrap into the next column.
+  private static final int COLUMN_BITS = BOARD_HEIGHT + 1;
+  // The bits of each column, indexed by column.
+  private static final long[] COLUMN_MASKS = new long[BOARD_WIDTH];
+  static {
+    for (int column = 0; column < BOARD_WIDTH; ++column) {
+      COLUMN_MASKS[column] = ((1L << BOARD_HEIGHT) - 1) << (column * COLUMN_BITS);
+    }
+  }
+  
+  // Bitboards of the pieces of each player.
+  private long playerOnePieces;
+  private long playerTwoPieces;
+  // Bitmask of the columns which are not full.
+  private int legalColumns;
   private int currentPlayer;
   private int winner;
-  private Random random = new Random();
+  // Zobrist hash of the board and current player.
+  private long hash;
+  private final CopyableRandom random;
   
   /**
    * Null-initializes this state. The state will not be usable until one of
    * initialize() or setToStartingConditions() is called on the result; 
    */
   public C4State() {
+    this.random = new CopyableRandom();
   }
 
-  private C4State(int[][] board, List<Long> actions, int currentPlayer, int winner) {
-    this.board = board;
-    this.actions = actions;
+  private C4State(long playerOnePieces, long playerTwoPieces, int legalColumns,
+      int currentPlayer, int winner, long hash, CopyableRandom random) {
+    this.random = random;
+    this.playerOnePieces = playerOnePieces;
+    this.playerTwoPieces = playerTwoPieces;
+    this.legalColumns = legalColumns;
     this.currentPlayer = currentPlayer;
     this.winner = winner;
+    this.hash = hash;
   }
 
   /**
@@ -64,7 +128,7 @@ public class C4State implements State {
    */
   @Override
   public State.ActionIterator getActionIterator() {
-    return new State.ActionIteratorFromIterable(actions);
+    return new ColumnIterator(ACTIONS[currentPlayer], legalColumns);
   }
   
   /**
@@ -72,7 +136,11 @@ public class C4State implements State {
    */
   @Override
   public long getRandomAction() {
-    return actions.get(random.nextInt(actions.size()));
+    int columns = legalColumns;
+    for (int i = random.nextInt(Integer.bitCount(columns)); i > 0; --i) {
+      columns &= columns - 1;
+    }
+    return ACTIONS[currentPlayer][Integer.numberOfTrailingZeros(columns)];
   }
 
   /**
@@ -80,14 +148,24 @@ public class C4State implements State {
    */
   @Override
   public long perform(long action) {
-    int freeSpace = 0;
-    while (board[C4Action.getColumnNumber(action)][freeSpace] != 0) {
-      freeSpace++;
+    int column = C4Action.getColumnNumber(action);
+    // Pieces in a column are contiguous from the bottom, so adding the
+    // column's bottom bit to them yields the lowest free cell.
+    long columnPieces = (playerOnePieces | playerTwoPieces) & COLUMN_MASKS[column];
+    long cell = columnPieces + (1L << (column * COLUMN_BITS));
+    int freeSpace = Long.numberOfTrailingZeros(cell) - column * COLUMN_BITS;
+    if (freeSpace == BOARD_HEIGHT - 1) {
+      legalColumns &= ~(1 << column);
     }
-    board[C4Action.getColumnNumber(action)][freeSpace] = currentPlayer;
-    winner = computeWinner(currentPlayer, C4Action.getColumnNumber(action), freeSpace);
+    long pieces;
+    if (currentPlayer == Player.PLAYER_ONE) {
+      pieces = playerOnePieces |= cell;
+    } else {
+      pieces = playerTwoPieces |= cell;
+    }
+    hash ^= PIECE_KEYS[currentPlayer][column][freeSpace] ^ PLAYER_TWO_KEY;
+    winner = hasFourInARow(pieces) ? currentPlayer : 0;
     currentPlayer = playerAfter(currentPlayer);
-    actions = actionsForCurrentPlayer();
     return 0;
   }
 
@@ -96,14 +174,18 @@ public class C4State implements State {
    */
   @Override
   public void undo(long action, long undoToken) {
-    int freeCell = BOARD_HEIGHT - 1;
-    while (board[C4Action.getColumnNumber(action)][freeCell] == 0) {
-      freeCell--;
-    }
-    board[C4Action.getColumnNumber(action)][freeCell] = 0;
+    int column = C4Action.getColumnNumber(action);
+    long cell = Long.highestOneBit((playerOnePieces | playerTwoPieces) & COLUMN_MASKS[column]);
+    int freeCell = Long.numberOfTrailingZeros(cell) - column * COLUMN_BITS;
+    legalColumns |= 1 << column;
     winner = 0;
     currentPlayer = playerBefore(currentPlayer);
-    actions = actionsForCurrentPlayer();
+    if (currentPlayer == Player.PLAYER_ONE) {
+      playerOnePieces &= ~cell;
+    } else {
+      playerTwoPieces &= ~cell;
+    }
+    hash ^= PIECE_KEYS[currentPlayer][column][freeCell] ^ PLAYER_TWO_KEY;
   }
 
   /**
@@ -111,10 +193,12 @@ public class C4State implements State {
    */
   @Override
   public C4State setToStartingConditions() {
-    board = new int[BOARD_WIDTH][BOARD_HEIGHT];
+    playerOnePieces = 0L;
+    playerTwoPieces = 0L;
+    legalColumns = ALL_COLUMNS;
     winner = 0;
     currentPlayer = Player.PLAYER_ONE;
-    actions = actionsForCurrentPlayer();
+    hash = 0L;
     return this;
   }
 
@@ -123,10 +207,8 @@ public class C4State implements State {
    */
   @Override
   public State copy() {
-    if (actions == null && board == null) {
-      return new C4State();
-    }
-    return new C4State(copyBoard(), new ArrayList<Long>(actions), currentPlayer, winner);
+    return new C4State(playerOnePieces, playerTwoPieces, legalColumns, currentPlayer, winner,
+        hash, random.copy());
   }
 
   /**
@@ -135,19 +217,32 @@ public class C4State implements State {
   @Override
   public C4State initializeFrom(Copyable state) {
     C4State temp = (C4State)state.copy();
-    this.board = temp.board;
+    this.playerOnePieces = temp.playerOnePieces;
+    this.playerTwoPieces = temp.playerTwoPieces;
+    this.legalColumns = temp.legalColumns;
     this.winner = temp.winner;
     this.currentPlayer = temp.currentPlayer;
-    this.actions = temp.actions;
+    this.hash = temp.hash;
+    this.random.initializeFrom(temp.random);
     return this;
   }
 
+  /**
+   * {@inheritDoc} Copies of this state continue from the same point in this
+   * state's sequence of random choices, and must be given seeds of their own
+   * to make different choices.
+   */
+  @Override
+  public void setSeed(long seed) {
+    random.setSeed(seed);
+  }
+
   /**
    * {@inheritDoc}
    */
   @Override
   public boolean isTerminal() {
-    if (actions.size() == 0) return true; // Draw
+    if (legalColumns == 0) return true; // Draw
     return winner != 0;
   }
 
@@ -159,6 +254,14 @@ public class C4State implements State {
     return winner;
   }
 
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public long hash() {
+    return hash;
+  }
+
   /**
    * {@inheritDoc}
    */
@@ -192,16 +295,37 @@ public class C4State implements State {
     return "[" + C4Action.getColumnNumber(action) + "]";
   }
   
+  /**
+   * Two C4States are equal if they have the same pieces on the board and the
+   * same current player.
+   */
+  @Override
+  public boolean equals(Object object) {
+    if (this == object) return true;
+    if (!(object instanceof C4State)) return false;
+    C4State other = (C4State)object;
+    return currentPlayer == other.currentPlayer &&
+        playerOnePieces == other.playerOnePieces && playerTwoPieces == other.playerTwoPieces;
+  }
+  
+  @Override
+  public int hashCode() {
+    long bits = playerOnePieces * 31 + playerTwoPieces;
+    return 31 * (int)(bits ^ (bits >>> 32)) + currentPlayer;
+  }
+  
   @Override  
   public String toString() {
     StringBuilder result = new StringBuilder();
-    for (int row = 5; row >= 0; --row) {
-      for (int column = 0; column < 7; ++column) {
-        int p = board[column][row];
-        if (p == 0) {
-          result.append("-");
+    for (int row = BOARD_HEIGHT - 1; row >= 0; --row) {
+      for (int column = 0; column < BOARD_WIDTH; ++column) {
+        long cell = 1L << (column * COLUMN_BITS + row);
+        if ((playerOnePieces & cell) != 0) {
+          result.append("O");
+        } else if ((playerTwoPieces & cell) != 0) {
+          result.append("X");
         } else {
-          result.append(p ==  Player.PLAYER_TWO ? "X" : "O");
+          result.append("-");
         }
       }
       result.append("\n");
@@ -210,104 +334,32 @@ public class C4State implements State {
   }
   
   /**
-   * @return A list of actions the current player could legally take from 
-   *     the current state.
-   */
-  private List<Long> actionsForCurrentPlayer() {
-    List<Long> actions = currentPlayer == Player.PLAYER_TWO ? p2Actions : p1Actions;
-    List<Long> result = new ArrayList<Long>();
-    for (int i = 0; i < actions.size(); ++i) {
-      long action = actions.get(i);
-      if (board[C4Action.getColumnNumber(action)][BOARD_HEIGHT - 1] == 0) {
-        result.add(action);
-      }
-    }
-    return result;
-  }
-  
-  /**
-   * Checks whether the provided player has won by making the provided move.
+   * Checks for four pieces in a row by shifting the bitboard against itself
+   * in each direction: once to find pairs, and then once more to find pairs
+   * of pairs.
    *
-   * @param player Player to check.
-   * @param moveColumn Column number of player's move.
-   * @param moveRow Row number of player's move.
-   * @return The provided player if this move was a winning move for that
-   *     player, otherwise null.
+   * @param pieces Bitboard of one player's pieces.
+   * @return True if the pieces contain four in a row in any direction.
    */
-  private int computeWinner(int player, int moveColumn, int moveRow) {
-    // Vertical win?
-    if (countGroupSize(moveColumn, moveRow - 1, Direction.S, player) >= 3) {
-      return player;
+  private static boolean hasFourInARow(long pieces) {
+    // Vertical
+    long pairs = pieces & (pieces >>> 1);
+    if ((pairs & (pairs >>> 2)) != 0) {
+      return true;
     }
-    
-    // Horizontal win?
-    if (countGroupSize(moveColumn + 1, moveRow, Direction.E, player) +
-        countGroupSize(moveColumn - 1, moveRow, Direction.W, player) >= 3) {
-      return player;
+    // Horizontal
+    pairs = pieces & (pieces >>> COLUMN_BITS);
+    if ((pairs & (pairs >>> (2 * COLUMN_BITS))) != 0) {
+      return true;
     }
-    
-    // Diagonal win?
-    if (countGroupSize(moveColumn + 1, moveRow + 1, Direction.NE, player) +
-        countGroupSize(moveColumn - 1, moveRow - 1, Direction.SW, player) >= 3) {
-      return player;
-    }
-    if (countGroupSize(moveColumn - 1, moveRow + 1, Direction.NW, player) +
-        countGroupSize(moveColumn + 1, moveRow - 1, Direction.SE, player) >=3) {
-      return player;
-    }
-    
-    // No win
-    return 0;
-  }
-
-  /**
-   * Counts consecutive pieces from the same player.
-   *
-   * @param col Column number to start counting from.
-   * @param row Row number to start counting from.
-   * @param dir Direction in which to count.
-   * @param player Player whose pieces we are counting.
-   * @return The number of pieces belonging to this player, not counting the
-   *     provided column and row, which can be found in a line in the provided
-   *     direction.
-   */
-  private int countGroupSize(int col, int row, Direction dir, int player) {
-    if (row < 6 && row >= 0 && col < 7 && col >= 0
-        && board[col][row] == player) {
-      switch (dir) {
-        case N:
-          return 1 + countGroupSize(col, row + 1, dir, player);
-        case S:
-          return 1 + countGroupSize(col, row - 1, dir, player);
-        case E:
-          return 1 + countGroupSize(col + 1, row, dir, player);
-        case W:
-          return 1 + countGroupSize(col - 1, row, dir, player);
-        case NE:
-          return 1 + countGroupSize(col + 1, row + 1, dir, player);
-        case NW:
-          return 1 + countGroupSize(col - 1, row + 1, dir, player);
-        case SE:
-          return 1 + countGroupSize(col + 1, row - 1, dir, player);
-        case SW:
-          return 1 + countGroupSize(col - 1, row - 1, dir, player);
-        default:
-          return 0;
-      }
-    } else {
-      return 0;
-    }
-  }
-  
-  /**
-   * @return A copy of the game's current board.
-   */
-  private int[][] copyBoard() {
-    int[][] result = new int[BOARD_WIDTH][BOARD_HEIGHT];
-    for (int i = 0; i < BOARD_WIDTH; ++i) {
-      result[i] = Arrays.copyOf(board[i], BOARD_HEIGHT);
+    // Diagonal, rising to the right
+    pairs = pieces & (pieces >>> (COLUMN_BITS + 1));
+    if ((pairs & (pairs >>> (2 * (COLUMN_BITS + 1)))) != 0) {
+      return true;
     }
-    return result;
+    // Diagonal, falling to the right
+    pairs = pieces & (pieces >>> (COLUMN_BITS - 1));
+    return (pairs & (pairs >>> (2 * (COLUMN_BITS - 1)))) != 0;
   }
 
 }
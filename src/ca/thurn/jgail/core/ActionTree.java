@@ -17,7 +17,17 @@ public class ActionTree {
    * Constructs a new ActionTree root node.
    */
   public ActionTree() {
-    this.children = new HashMap<Long, ActionTree>();
+    this(new HashMap<Long, ActionTree>());
+  }
+  
+  /**
+   * Constructs a new ActionTree root node which stores its children in the
+   * provided map.
+   * 
+   * @param children Empty map to store child nodes in.
+   */
+  protected ActionTree(Map<Long, ActionTree> children) {
+    this.children = children;
   }
   
   /**
@@ -36,6 +46,36 @@ public class ActionTree {
     return result;
   }
   
+  /**
+   * Associates the provided node with this action unless a child node is
+   * already associated with it. This allows one node to be the child of
+   * several parents, for example when the same game state can be reached
+   * via different sequences of actions.
+   * 
+   * @param action Action to associate the child node with.
+   * @param child Node to associate with the action.
+   * @return The child ActionTree associated with this value after this call.
+   */
+  public ActionTree addChild(long action, ActionTree child) {
+    ActionTree result = children.get(action);
+    if (result == null) {
+      result = child;
+      children.put(action, result);
+    }
+    return result;
+  }
+  
+  /**
+   * Return the child node associated with this action, if one exists.
+   * 
+   * @param action Action to retrieve the corresponding child node for.
+   * @return The child ActionTree associated with this value, or null if no
+   *     child has been created for this action.
+   */
+  public ActionTree getChild(long action) {
+    return children.get(action);
+  }
+  
   /**
    * Increases numVisits by 1.
    */
@@ -52,6 +92,30 @@ public class ActionTree {
     totalReward += reward;
   }
   
+  /**
+   * Records a visit to this node which is still in progress by counting it
+   * as a visit with the provided (negative) reward. This discourages other
+   * searches running in parallel from selecting the same node until the
+   * visit completes and {@link ActionTree#removeVirtualLoss(double)} is
+   * called.
+   * 
+   * @param loss Amount to temporarily subtract from the total reward.
+   */
+  public void addVirtualLoss(double loss) {
+    numVisits++;
+    totalReward -= loss;
+  }
+  
+  /**
+   * Reverts a previous call to {@link ActionTree#addVirtualLoss(double)}.
+   * 
+   * @param loss The loss which was previously added.
+   */
+  public void removeVirtualLoss(double loss) {
+    numVisits--;
+    totalReward += loss;
+  }
+  
   /**
    * @return Total number of visits recorded to this game tree node.
    */
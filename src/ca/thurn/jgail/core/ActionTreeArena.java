@@ -0,0 +1,283 @@
+package ca.thurn.jgail.core;
+
+import java.util.Arrays;
+
+/**
+ * A class to track the number of visits to and rewards associated with given
+ * game tree nodes, like {@link ActionTree}, which stores the entire tree in
+ * flat primitive arrays. Nodes are identified by integer indices into these
+ * arrays and child lookups never box actions, so once the arrays have grown
+ * large enough, an arena which is reused via {@link ActionTreeArena#clear()}
+ * performs no allocations at all. Not safe for use by multiple threads.
+ */
+public class ActionTreeArena {
+
+  /**
+   * Index returned by {@link ActionTreeArena#findChild(int, long)} when there
+   * is no child node associated with an action.
+   */
+  public static final int NO_NODE = -1;
+
+  private static final int DEFAULT_CAPACITY = 1024;
+
+  private long[] actions;
+  private int[] parents;
+  private int[] firstChildren;
+  private int[] nextSiblings;
+  private int[] numVisits;
+  private double[] totalRewards;
+  private int size;
+  // Open addressing hash table from (parent, action) pairs to child nodes,
+  // storing node indices plus one so that zero marks an empty slot. Always
+  // at most half full.
+  private int[] index;
+
+  /**
+   * Constructs a new ActionTreeArena containing only a root node.
+   */
+  public ActionTreeArena() {
+    this(DEFAULT_CAPACITY);
+  }
+
+  /**
+   * Constructs a new ActionTreeArena containing only a root node.
+   *
+   * @param initialCapacity Number of nodes to allocate space for up front.
+   */
+  public ActionTreeArena(int initialCapacity) {
+    allocate(Math.max(initialCapacity, 2));
+    clear();
+  }
+
+  /**
+   * Removes every node from the arena other than the root node, and resets
+   * the root node's statistics. Previously allocated space is kept for reuse.
+   */
+  public void clear() {
+    Arrays.fill(index, 0);
+    size = 0;
+    newNode(NO_NODE, 0L);
+  }
+
+  /**
+   * Replaces the contents of this arena with a copy of a subtree of another
+   * arena. The root of the subtree becomes the root node of this arena.
+   *
+   * @param source Arena to copy from. Must not be this arena.
+   * @param node Index of the root of the subtree to copy in the source arena.
+   */
+  public void copySubtree(ActionTreeArena source, int node) {
+    clear();
+    numVisits[0] = source.numVisits[node];
+    totalRewards[0] = source.totalRewards[node];
+    // Pairs of (source node, copied node) whose children remain to be copied.
+    int[] stack = new int[64];
+    int top = 0;
+    stack[top++] = node;
+    stack[top++] = 0;
+    while (top > 0) {
+      int copy = stack[--top];
+      int original = stack[--top];
+      for (int child = source.firstChildren[original]; child != NO_NODE;
+          child = source.nextSiblings[child]) {
+        int copiedChild = newNode(copy, source.actions[child]);
+        numVisits[copiedChild] = source.numVisits[child];
+        totalRewards[copiedChild] = source.totalRewards[child];
+        if (top + 2 > stack.length) {
+          stack = Arrays.copyOf(stack, stack.length * 2);
+        }
+        stack[top++] = child;
+        stack[top++] = copiedChild;
+      }
+    }
+  }
+
+  /**
+   * @return The index of the root node.
+   */
+  public int getRoot() {
+    return 0;
+  }
+
+  /**
+   * @return The number of nodes currently in the arena.
+   */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * @param node A node index.
+   * @param action Action to retrieve the corresponding child node for.
+   * @return The index of the child node associated with this action, or
+   *     {@link ActionTreeArena#NO_NODE} if it does not exist.
+   */
+  public int findChild(int node, long action) {
+    int mask = index.length - 1;
+    for (int slot = hash(node, action) & mask; index[slot] != 0; slot = (slot + 1) & mask) {
+      int child = index[slot] - 1;
+      if (parents[child] == node && actions[child] == action) {
+        return child;
+      }
+    }
+    return NO_NODE;
+  }
+
+  /**
+   * Return the child node associated with this action, creating one if it does
+   * not already exist.
+   *
+   * @param node A node index.
+   * @param action Action to retrieve the corresponding child node for.
+   * @return The index of the child node associated with this action.
+   */
+  public int child(int node, long action) {
+    int result = findChild(node, action);
+    if (result == NO_NODE) {
+      result = newNode(node, action);
+    }
+    return result;
+  }
+
+  /**
+   * Increases numVisits for a node by 1.
+   *
+   * @param node A node index.
+   */
+  public void incrementNumVisits(int node) {
+    numVisits[node]++;
+  }
+
+  /**
+   * Adds the provided reward to the stored totalReward for a node.
+   *
+   * @param node A node index.
+   * @param reward Reward to add.
+   */
+  public void addReward(int node, double reward) {
+    totalRewards[node] += reward;
+  }
+
+  /**
+   * @param node A node index.
+   * @return Total number of visits recorded to this game tree node.
+   */
+  public int getNumVisits(int node) {
+    return numVisits[node];
+  }
+
+  /**
+   * @param node A node index.
+   * @return Total reward associated with this game tree node.
+   */
+  public double getTotalReward(int node) {
+    return totalRewards[node];
+  }
+
+  /**
+   * @param node A non-root node index.
+   * @return The action which leads from this node's parent to this node.
+   */
+  public long getAction(int node) {
+    return actions[node];
+  }
+
+  /**
+   * @param node A node index.
+   * @return The most recently created child of this node, or
+   *     {@link ActionTreeArena#NO_NODE} if it has no children.
+   */
+  public int getFirstChild(int node) {
+    return firstChildren[node];
+  }
+
+  /**
+   * @param node A non-root node index.
+   * @return The next child of this node's parent, or
+   *     {@link ActionTreeArena#NO_NODE} if this is the parent's last child.
+   */
+  public int getNextSibling(int node) {
+    return nextSiblings[node];
+  }
+
+  /**
+   * Adds a new node to the arena, growing it if necessary.
+   *
+   * @param parent Index of the new node's parent, or NO_NODE for the root.
+   * @param action Action leading from the parent to the new node.
+   * @return The index of the new node.
+   */
+  private int newNode(int parent, long action) {
+    if (size == actions.length) {
+      grow();
+    }
+    int node = size++;
+    actions[node] = action;
+    parents[node] = parent;
+    firstChildren[node] = NO_NODE;
+    numVisits[node] = 0;
+    totalRewards[node] = 0.0;
+    if (parent == NO_NODE) {
+      nextSiblings[node] = NO_NODE;
+    } else {
+      nextSiblings[node] = firstChildren[parent];
+      firstChildren[parent] = node;
+      addToIndex(node);
+    }
+    return node;
+  }
+
+  /**
+   * @param node Non-root node to add to the hash index.
+   */
+  private void addToIndex(int node) {
+    int mask = index.length - 1;
+    int slot = hash(parents[node], actions[node]) & mask;
+    while (index[slot] != 0) {
+      slot = (slot + 1) & mask;
+    }
+    index[slot] = node + 1;
+  }
+
+  /**
+   * Allocates empty storage for the provided number of nodes.
+   *
+   * @param capacity Number of nodes.
+   */
+  private void allocate(int capacity) {
+    actions = new long[capacity];
+    parents = new int[capacity];
+    firstChildren = new int[capacity];
+    nextSiblings = new int[capacity];
+    numVisits = new int[capacity];
+    totalRewards = new double[capacity];
+    index = new int[Integer.highestOneBit(capacity - 1) << 2];
+  }
+
+  /**
+   * Doubles the capacity of the arena, preserving all existing nodes.
+   */
+  private void grow() {
+    int capacity = actions.length * 2;
+    actions = Arrays.copyOf(actions, capacity);
+    parents = Arrays.copyOf(parents, capacity);
+    firstChildren = Arrays.copyOf(firstChildren, capacity);
+    nextSiblings = Arrays.copyOf(nextSiblings, capacity);
+    numVisits = Arrays.copyOf(numVisits, capacity);
+    totalRewards = Arrays.copyOf(totalRewards, capacity);
+    index = new int[Integer.highestOneBit(capacity - 1) << 2];
+    for (int node = 1; node < size; ++node) {
+      addToIndex(node);
+    }
+  }
+
+  /**
+   * @param node A node index.
+   * @param action An action.
+   * @return A well-mixed hash code for this (node, action) pair.
+   */
+  private static int hash(int node, long action) {
+    long h = (action ^ ((long)node << 32 | node)) * 0x9E3779B97F4A7C15L;
+    return (int)(h ^ (h >>> 32));
+  }
+}
@@ -4,7 +4,7 @@ package ca.thurn.jgail.core;
 /**
  * An Evaluator which relies on an underlying Agent to perform evaluation.
  */
-public class AgentEvaluator implements Evaluator {
+public class AgentEvaluator implements Evaluator, Seedable {
   private final Agent agent;  
   private final long timeBudget;
 
@@ -44,6 +44,16 @@ public class AgentEvaluator implements Evaluator {
     }
   }
   
+  /**
+   * {@inheritDoc} Seeds the underlying agent, if it is Seedable.
+   */
+  @Override
+  public void setSeed(long seed) {
+    if (agent instanceof Seedable) {
+      ((Seedable)agent).setSeed(seed);
+    }
+  }
+  
   public String toString() {
     return "AgentEvaluator [agent=" + agent + "]";
   }
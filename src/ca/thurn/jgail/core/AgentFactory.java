@@ -0,0 +1,13 @@
+package ca.thurn.jgail.core;
+
+/**
+ * Creates new, independent instances of an Agent, so that games can be
+ * played concurrently without sharing agent state.
+ */
+public interface AgentFactory {
+  /**
+   * @return A new Agent. Agents returned by successive calls must be safe to
+   *     use concurrently from different threads.
+   */
+  public Agent newAgent();
+}
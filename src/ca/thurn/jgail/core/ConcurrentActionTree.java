@@ -0,0 +1,112 @@
+package ca.thurn.jgail.core;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * An {@link ActionTree} which can safely be read and updated by several
+ * threads at once. Visit counts and rewards are updated atomically and child
+ * nodes are created without locking.
+ */
+public class ConcurrentActionTree extends ActionTree {
+  
+  private final ConcurrentMap<Long, ActionTree> children;
+  private final AtomicInteger numVisits = new AtomicInteger();
+  // Stores the bits of a double, see Double#doubleToRawLongBits().
+  private final AtomicLong totalReward = new AtomicLong(Double.doubleToRawLongBits(0.0));
+  
+  /**
+   * Constructs a new ConcurrentActionTree root node.
+   */
+  public ConcurrentActionTree() {
+    this(new ConcurrentHashMap<Long, ActionTree>());
+  }
+  
+  private ConcurrentActionTree(ConcurrentMap<Long, ActionTree> children) {
+    super(children);
+    this.children = children;
+  }
+  
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public ActionTree child(long action) {
+    ActionTree result = children.get(action);
+    if (result == null) {
+      ActionTree created = new ConcurrentActionTree();
+      result = children.putIfAbsent(action, created);
+      if (result == null) {
+        result = created;
+      }
+    }
+    return result;
+  }
+  
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public ActionTree addChild(long action, ActionTree child) {
+    ActionTree result = children.putIfAbsent(action, child);
+    return result == null ? child : result;
+  }
+  
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void incrementNumVisits() {
+    numVisits.incrementAndGet();
+  }
+  
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void addReward(double reward) {
+    while (true) {
+      long current = totalReward.get();
+      long updated = Double.doubleToRawLongBits(Double.longBitsToDouble(current) + reward);
+      if (totalReward.compareAndSet(current, updated)) {
+        return;
+      }
+    }
+  }
+  
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void addVirtualLoss(double loss) {
+    numVisits.incrementAndGet();
+    addReward(-loss);
+  }
+  
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void removeVirtualLoss(double loss) {
+    numVisits.decrementAndGet();
+    addReward(loss);
+  }
+  
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public int getNumVisits() {
+    return numVisits.get();
+  }
+  
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public double getTotalReward() {
+    return Double.longBitsToDouble(totalReward.get());
+  }
+}
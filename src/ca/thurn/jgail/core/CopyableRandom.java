@@ -0,0 +1,75 @@
+package ca.thurn.jgail.core;
+
+import java.util.Random;
+
+/**
+ * A source of randomness whose position in its sequence of random numbers
+ * can be copied. A copy makes exactly the same random choices as the
+ * original would have from that point on, and making one does not affect the
+ * original. Produces the same sequence as {@link Random} for the same seed.
+ * Not safe for use by multiple threads.
+ */
+public class CopyableRandom extends Random implements Copyable {
+  private static final long serialVersionUID = 1L;
+
+  private static final long MULTIPLIER = 0x5DEECE66DL;
+  private static final long ADDEND = 0xBL;
+  private static final long MASK = (1L << 48) - 1;
+
+  // Current state of the linear congruential generator.
+  private long state;
+
+  /**
+   * Constructs a new CopyableRandom with a seed that is very likely to be
+   * distinct from the seed of any other instance.
+   */
+  public CopyableRandom() {
+    super();
+  }
+
+  /**
+   * Constructs a new CopyableRandom.
+   *
+   * @param seed The initial seed.
+   */
+  public CopyableRandom(long seed) {
+    super(seed);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void setSeed(long seed) {
+    state = (seed ^ MULTIPLIER) & MASK;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public CopyableRandom copy() {
+    CopyableRandom result = new CopyableRandom(0L);
+    result.state = state;
+    return result;
+  }
+
+  /**
+   * Moves this source of randomness to the same position in its sequence as
+   * another one.
+   *
+   * @param other Source of randomness to copy the position of.
+   */
+  public void initializeFrom(CopyableRandom other) {
+    state = other.state;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  protected int next(int bits) {
+    state = (state * MULTIPLIER + ADDEND) & MASK;
+    return (int)(state >>> (48 - bits));
+  }
+}
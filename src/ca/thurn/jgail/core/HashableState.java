@@ -0,0 +1,18 @@
+package ca.thurn.jgail.core;
+
+/**
+ * A {@link State} which can summarize the game position it represents as a
+ * 64-bit hash, allowing search algorithms to recognize positions which can be
+ * reached via more than one sequence of actions.
+ */
+public interface HashableState extends State {
+  /**
+   * @return A hash of this state. States which represent the same position,
+   *     including everything which determines their legal actions, must
+   *     return the same hash, and other states should return different
+   *     hashes with high probability. This method will be called very frequently during
+   *     a search, so states should strive to make it cheap, ideally by
+   *     updating the hash incrementally in perform() and undo().
+   */
+  public long hash();
+}
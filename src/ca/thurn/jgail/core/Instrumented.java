@@ -0,0 +1,20 @@
+package ca.thurn.jgail.core;
+
+/**
+ * Represents an agent which keeps {@link SearchStats} about its searches, so
+ * that they can be monitored.
+ */
+public interface Instrumented {
+  /**
+   * @return Statistics for this agent's most recently finished search, or
+   *     {@link SearchStats#EMPTY} if no search has finished.
+   */
+  public SearchStats getLastSearchStats();
+
+  /**
+   * @return Statistics for every search this agent has finished. The counts
+   *     only ever increase, so they can be periodically sampled by a
+   *     monitoring system.
+   */
+  public SearchStats getSearchStats();
+}
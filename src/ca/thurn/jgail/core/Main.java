@@ -1,21 +1,27 @@
 package ca.thurn.jgail.core;
 
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 /**
  * A helper class for running games & sets of games between multiple Agents.
  */
 public class Main {
   private final List<Agent> agents;
+  // Null if this instance was not constructed with agent factories.
+  private final List<AgentFactory> agentFactories;
   private final State initialState;
   private final Random random = new Random();
-  private State canonicalState;
 
   /**
    * Constructs a new Main instance.
@@ -28,10 +34,36 @@ public class Main {
    *     appropriate initial state for this game.
    */
   public Main(List<Agent> agents, State canonicalState) {
+    this(agents, null, canonicalState);
+  }
+  
+  private Main(List<Agent> agents, List<AgentFactory> agentFactories, State canonicalState) {
     this.agents = agents;
+    this.agentFactories = agentFactories;
     this.initialState = canonicalState;
   }
   
+  /**
+   * Constructs a new Main instance which can run parallel tournaments via
+   * {@link Main#runParallelTournament(int, long, ExecutorService)}. One agent
+   * is created from each factory up front to play sequential matches and
+   * tournaments and to identify the agent in results.
+   *
+   * @param agentFactories Factories for the agents who will participate in
+   *     the game(s).
+   * @param canonicalState The state to use as the canonical game state, as
+   *     in {@link Main#Main(List, State)}.
+   * @return A new Main instance.
+   */
+  public static Main withAgentFactories(List<AgentFactory> agentFactories,
+      State canonicalState) {
+    List<Agent> agents = new ArrayList<Agent>();
+    for (AgentFactory factory : agentFactories) {
+      agents.add(factory.newAgent());
+    }
+    return new Main(agents, agentFactories, canonicalState);
+  }
+  
   /**
    * Run a series of matches between the agents, selected at random, and then
    * report the results.
@@ -49,46 +81,152 @@ public class Main {
 
     for (int i = 0; i < tournamentSize; ++i) {
       Map<Integer, Agent> agentMap = new HashMap<Integer, Agent>();
-      int black = random.nextInt(agents.size());
-      int red = random.nextInt(agents.size());
-      while (red == black) {
-        red = random.nextInt(agents.size());
-      }
-      Agent agent1 = agents.get(black);
-      Agent agent2 = agents.get(red);
-      agentMap.put(Player.PLAYER_ONE, agent1);
-      agentMap.put(Player.PLAYER_TWO, agent2);
+      int[] pairing = pickPairing(random);
+      agentMap.put(Player.PLAYER_ONE, agents.get(pairing[0]));
+      agentMap.put(Player.PLAYER_TWO, agents.get(pairing[1]));
       int winner = playGame(agentMap, false /* isInteractive */, perMoveTimeBudget);
       System.out.print(".");
-      if (winner == Player.PLAYER_ONE) {
-        if (wins.containsKey(agent1)) {
-          wins.put(agent1, wins.get(agent1) + 1);
-        } else {
-          wins.put(agent1, 1);
-        }
-      } else if (winner == Player.PLAYER_TWO) {
-        if (wins.containsKey(agent2)) {
-          wins.put(agent2, wins.get(agent2) + 1);
-        } else {
-          wins.put(agent2, 1);
+      draws += recordResult(wins, pairing, winner);
+      printIntermediateResults(i, tournamentSize, wins, draws);
+    }
+    
+    printTournamentResults(wins, draws);
+    printDuration(startTime, tournamentSize);
+  }
+  
+  /**
+   * Run a series of matches between the agents, selected at random, playing
+   * many matches at once, and then report the results. Each match is played
+   * by new agents created by the agent factories this instance was
+   * constructed with, so matches share no agent state. Pairings are selected
+   * exactly as {@link Main#runTournament(int, long)} would select them, and
+   * results are tallied in the same order.
+   *
+   * @param tournamentSize The number of matches to run.
+   * @param perMoveTimeBudget Amount of time to allow for each agent to pick a
+   *     move, if they are AsynchronousAgents.
+   * @param executor Executor to play matches on. The number of matches
+   *     played at once is limited by its number of threads, which should
+   *     not exceed the number of available cores divided by the number of
+   *     threads each agent uses, or agents with time budgets will be starved.
+   * @throws InterruptedException
+   */
+  public void runParallelTournament(int tournamentSize, long perMoveTimeBudget,
+      ExecutorService executor) throws InterruptedException {
+    runParallel(tournamentSize, perMoveTimeBudget, random, false /* seeded */, executor);
+  }
+  
+  /**
+   * Run a reproducible series of matches between the agents, selected at
+   * random, and then report the results. Pairings are selected using the
+   * provided seed. Before each match, the canonical state and every agent
+   * which is {@link Seedable} are given seeds derived from it, and agents
+   * always pick actions via {@link Agent#pickActionBlocking(int, State)}, so
+   * that their budgets are expressed in simulations or nodes rather than in
+   * time. Provided that the agents are deterministic given their seeds (for
+   * example, they search with a single thread and have no time budgets) and
+   * the initial state was seeded before being set to its starting
+   * conditions, every run with the same seed plays exactly the same moves.
+   *
+   * @param tournamentSize The number of matches to run.
+   * @param seed The seed for the tournament.
+   */
+  public void runSeededTournament(int tournamentSize, long seed) {
+    long startTime = System.currentTimeMillis();
+    Random seeds = new Random(seed);
+    Map<Agent, Integer> wins = new HashMap<Agent, Integer>();
+    int draws = 0;
+    for (int i = 0; i < tournamentSize; ++i) {
+      int[] pairing = pickPairing(seeds);
+      Map<Integer, Agent> agentMap = new HashMap<Integer, Agent>();
+      agentMap.put(Player.PLAYER_ONE, agents.get(pairing[0]));
+      agentMap.put(Player.PLAYER_TWO, agents.get(pairing[1]));
+      int winner = playSeededGame(agentMap, seeds.nextLong());
+      System.out.print(".");
+      draws += recordResult(wins, pairing, winner);
+      printIntermediateResults(i, tournamentSize, wins, draws);
+    }
+    printTournamentResults(wins, draws);
+    printDuration(startTime, tournamentSize);
+  }
+  
+  /**
+   * Run a reproducible series of matches between the agents, as in
+   * {@link Main#runSeededTournament(int, long)}, playing many matches at once
+   * as in {@link Main#runParallelTournament(int, long, ExecutorService)}.
+   * Produces the same moves and results as a sequential seeded tournament
+   * with the same seed, provided that the agents do not carry any state from
+   * one match to the next.
+   *
+   * @param tournamentSize The number of matches to run.
+   * @param seed The seed for the tournament.
+   * @param executor Executor to play matches on.
+   * @throws InterruptedException
+   */
+  public void runSeededParallelTournament(int tournamentSize, long seed,
+      ExecutorService executor) throws InterruptedException {
+    runParallel(tournamentSize, 0L, new Random(seed), true /* seeded */, executor);
+  }
+  
+  /**
+   * Runs matches between new agents created by the agent factories on an
+   * executor, and then reports the results.
+   *
+   * @param tournamentSize The number of matches to run.
+   * @param perMoveTimeBudget Amount of time to allow for each agent to pick a
+   *     move in unseeded matches, if they are AsynchronousAgents.
+   * @param random Source of randomness for selecting pairings and, for
+   *     seeded matches, the seed of each match.
+   * @param seeded Whether to play seeded matches.
+   * @param executor Executor to play matches on.
+   * @throws InterruptedException
+   */
+  private void runParallel(int tournamentSize, final long perMoveTimeBudget,
+      Random random, final boolean seeded, ExecutorService executor)
+      throws InterruptedException {
+    if (agentFactories == null) {
+      throw new IllegalStateException("Parallel tournaments require agent factories");
+    }
+    long startTime = System.currentTimeMillis();
+    List<int[]> pairings = new ArrayList<int[]>();
+    List<Future<Integer>> results = new ArrayList<Future<Integer>>();
+    for (int i = 0; i < tournamentSize; ++i) {
+      final int[] pairing = pickPairing(random);
+      final long seed = seeded ? random.nextLong() : 0L;
+      pairings.add(pairing);
+      results.add(executor.submit(new Callable<Integer>() {
+        @Override
+        public Integer call() throws InterruptedException {
+          Map<Integer, Agent> agentMap = new HashMap<Integer, Agent>();
+          agentMap.put(Player.PLAYER_ONE, agentFactories.get(pairing[0]).newAgent());
+          agentMap.put(Player.PLAYER_TWO, agentFactories.get(pairing[1]).newAgent());
+          if (seeded) {
+            return playSeededGame(agentMap, seed);
+          }
+          return playGame(agentMap, false /* isInteractive */, perMoveTimeBudget);
         }
-      } else if (winner == 0) {
-        draws++;
+      }));
+    }
+    
+    Map<Agent, Integer> wins = new HashMap<Agent, Integer>();
+    int draws = 0;
+    try {
+      for (int i = 0; i < tournamentSize; ++i) {
+        int winner = results.get(i).get();
+        System.out.print(".");
+        draws += recordResult(wins, pairings.get(i), winner);
+        printIntermediateResults(i, tournamentSize, wins, draws);
       }
-      
-      if (i >= 10 && i % (tournamentSize / 10) == 0) {
-        // Print intermediate results
-        printTournamentResults(wins, draws);        
+    } catch (ExecutionException e) {
+      throw new RuntimeException("Match failed", e.getCause());
+    } finally {
+      for (Future<Integer> result : results) {
+        result.cancel(true /* mayInterruptIfRunning */);
       }
     }
     
     printTournamentResults(wins, draws);
-    
-    long duration = System.currentTimeMillis() - startTime;
-    String elapsed = new SimpleDateFormat("mm:ss").format(new Date(duration));
-    String perTournament = new SimpleDateFormat("mm:ss").format(new Date(duration / tournamentSize));
-    System.out.println("Tournament finished in " + elapsed + " (" + perTournament + 
-        " per tournament)");    
+    printDuration(startTime, tournamentSize);
   }
   
   /**
@@ -124,7 +262,7 @@ public class Main {
    */
   private int playGame(Map<Integer, Agent> agentMap, boolean isInteractive,
       long perMoveTimeBudget) throws InterruptedException {
-    canonicalState = initialState.copy();
+    State canonicalState = initialState.copy();
     while (!canonicalState.isTerminal()) {
       if (isInteractive) {
         System.out.println(canonicalState);
@@ -156,6 +294,106 @@ public class Main {
     return canonicalState.getWinner();
   }
   
+  /**
+   * Play a reproducible match between the supplied agents, as described in
+   * {@link Main#runSeededTournament(int, long)}.
+   *
+   * @param agentMap A mapping from players in the game to the agents who will
+   *     represent them.
+   * @param seed The seed for the match.
+   * @return The winner of the game as defined by the canonical state's
+   *     {@link State#getWinner()} method.
+   */
+  private int playSeededGame(Map<Integer, Agent> agentMap, long seed) {
+    Random seeds = new Random(seed);
+    State canonicalState = initialState.copy();
+    if (canonicalState instanceof Seedable) {
+      ((Seedable)canonicalState).setSeed(seeds.nextLong());
+    }
+    for (int player : new int[] {Player.PLAYER_ONE, Player.PLAYER_TWO}) {
+      long agentSeed = seeds.nextLong();
+      if (agentMap.get(player) instanceof Seedable) {
+        ((Seedable)agentMap.get(player)).setSeed(agentSeed);
+      }
+    }
+    while (!canonicalState.isTerminal()) {
+      Agent agent = agentMap.get(canonicalState.getCurrentPlayer());
+      long action = agent.pickActionBlocking(canonicalState.getCurrentPlayer(),
+          agent.getStateRepresentation().initializeFrom(canonicalState)).getAction();
+      canonicalState.perform(action);
+    }
+    return canonicalState.getWinner();
+  }
+  
+  /**
+   * Adds the result of a match to a tally of results.
+   *
+   * @param wins Number of wins for each agent.
+   * @param pairing The indices of the agents who played as the first and
+   *     second player.
+   * @param winner The winner of the match.
+   * @return 1 if the match was drawn, 0 otherwise.
+   */
+  private int recordResult(Map<Agent, Integer> wins, int[] pairing, int winner) {
+    if (winner == Player.PLAYER_ONE || winner == Player.PLAYER_TWO) {
+      Agent agent = agents.get(pairing[winner == Player.PLAYER_ONE ? 0 : 1]);
+      if (wins.containsKey(agent)) {
+        wins.put(agent, wins.get(agent) + 1);
+      } else {
+        wins.put(agent, 1);
+      }
+    } else if (winner == 0) {
+      return 1;
+    }
+    return 0;
+  }
+  
+  /**
+   * Prints out the results of a tournament so far, every tenth of the way
+   * through it.
+   *
+   * @param match Index of the match which has just been recorded.
+   * @param tournamentSize The number of matches in the tournament.
+   * @param wins Number of wins for each agent so far.
+   * @param draws Number of draws so far.
+   */
+  private void printIntermediateResults(int match, int tournamentSize, Map<Agent, Integer> wins,
+      int draws) {
+    if (match >= 10 && match % (tournamentSize / 10) == 0) {
+      printTournamentResults(wins, draws);
+    }
+  }
+  
+  /**
+   * Selects two distinct agents at random to play a match.
+   *
+   * @param random Source of randomness to use.
+   * @return The indices of the agents to play as the first and second
+   *     player.
+   */
+  private int[] pickPairing(Random random) {
+    int black = random.nextInt(agents.size());
+    int red = random.nextInt(agents.size());
+    while (red == black) {
+      red = random.nextInt(agents.size());
+    }
+    return new int[] {black, red};
+  }
+  
+  /**
+   * Prints out the duration of a tournament.
+   *
+   * @param startTime Time at which the tournament started.
+   * @param tournamentSize The number of matches in the tournament.
+   */
+  private void printDuration(long startTime, int tournamentSize) {
+    long duration = System.currentTimeMillis() - startTime;
+    String elapsed = new SimpleDateFormat("mm:ss").format(new Date(duration));
+    String perTournament = new SimpleDateFormat("mm:ss").format(new Date(duration / tournamentSize));
+    System.out.println("Tournament finished in " + elapsed + " (" + perTournament + 
+        " per tournament)");    
+  }
+  
   /**
    * Prints out the results of a tournament.
    *
@@ -0,0 +1,297 @@
+package ca.thurn.jgail.core;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+
+/**
+ * A read-only table of precomputed values for game positions, such as solved
+ * endgames or opening statistics, keyed by {@link HashableState#hash()} and
+ * stored in a file. The file is mapped into memory rather than read, so
+ * opening a table is nearly instant regardless of its size, and every process
+ * on a host which opens the same file shares a single copy of it in the
+ * operating system's page cache.
+ *
+ * <p>The file format is a 24 byte header, consisting of the int
+ * {@link MappedTable#MAGIC}, the int {@link MappedTable#VERSION}, the int kind
+ * of table, a reserved int which is always zero and the long number of
+ * entries, followed by the entries in ascending order of hash. Each entry is a
+ * long hash followed by a long value. All numbers are big-endian. Lookups
+ * binary search the entries. Files must be smaller than 2 GB, which limits a
+ * table to {@link MappedTable#MAX_ENTRIES} entries.
+ *
+ * <p>Files are written to a temporary file in the same directory, which then
+ * atomically replaces the destination, so processes which have the old file
+ * mapped keep reading the old table and never observe a partially written
+ * one. Safe for use by multiple threads.
+ */
+public class MappedTable {
+
+  /**
+   * The first four bytes of every table file.
+   */
+  public static final int MAGIC = 0x4A47544D;
+
+  /**
+   * The version of the file format written by this class.
+   */
+  public static final int VERSION = 2;
+
+  /**
+   * Kind of a table of solved positions, written by
+   * {@link MappedTable#write(File, Tablebase)}.
+   */
+  public static final int KIND_TABLEBASE = 1;
+
+  /**
+   * Kind of a table of opening statistics, written by
+   * {@link OpeningBook#write(File)}.
+   */
+  public static final int KIND_OPENING_BOOK = 2;
+
+  private static final int HEADER_SIZE = 24;
+  private static final int ENTRY_SIZE = 16;
+
+  /**
+   * The maximum number of entries in a table file.
+   */
+  public static final int MAX_ENTRIES = (Integer.MAX_VALUE - HEADER_SIZE) / ENTRY_SIZE;
+
+  private final ByteBuffer buffer;
+  private final int kind;
+  private final int size;
+
+  private MappedTable(ByteBuffer buffer, int kind, int size) {
+    this.buffer = buffer;
+    this.kind = kind;
+    this.size = size;
+  }
+
+  /**
+   * Opens a table file.
+   *
+   * @param file File to open.
+   * @param kind The kind of table the file must contain, such as
+   *     {@link MappedTable#KIND_TABLEBASE}.
+   * @return A new MappedTable reading from this file.
+   * @throws IOException If the file cannot be read or is not a valid table of
+   *     this kind.
+   */
+  public static MappedTable open(File file, int kind) throws IOException {
+    try (RandomAccessFile input = new RandomAccessFile(file, "r");
+        FileChannel channel = input.getChannel()) {
+      long length = channel.size();
+      if (length < HEADER_SIZE || length > Integer.MAX_VALUE) {
+        throw new IOException("Invalid table file length " + length + ": " + file);
+      }
+      MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, length);
+      if (buffer.getInt(0) != MAGIC) {
+        throw new IOException("Not a table file: " + file);
+      }
+      if (buffer.getInt(4) != VERSION) {
+        throw new IOException("Unsupported table file version " + buffer.getInt(4) + ": " + file);
+      }
+      if (buffer.getInt(8) != kind) {
+        throw new IOException("Expected table kind " + kind + " but found " + buffer.getInt(8) +
+            ": " + file);
+      }
+      long size = buffer.getLong(16);
+      if (size < 0 || HEADER_SIZE + size * ENTRY_SIZE != length) {
+        throw new IOException("Table file is truncated or corrupt: " + file);
+      }
+      return new MappedTable(buffer, kind, (int)size);
+    }
+  }
+
+  /**
+   * Writes a table file, atomically replacing any existing file.
+   *
+   * @param file File to write.
+   * @param kind The kind of table to write, such as
+   *     {@link MappedTable#KIND_TABLEBASE}.
+   * @param hashes State hashes of the entries. Must not contain duplicates.
+   *     Reordered by this method.
+   * @param values Values of the entries, in the same order as the hashes.
+   *     Reordered by this method.
+   * @param count Number of entries to write from the start of the arrays. At
+   *     most {@link MappedTable#MAX_ENTRIES}.
+   * @throws IOException If the file cannot be written.
+   */
+  public static void write(File file, int kind, long[] hashes, long[] values, int count)
+      throws IOException {
+    if (count < 0 || count > MAX_ENTRIES) {
+      throw new IllegalArgumentException("Invalid number of entries " + count);
+    }
+    sort(hashes, values, count);
+    for (int i = 1; i < count; ++i) {
+      if (hashes[i] == hashes[i - 1]) {
+        throw new IllegalArgumentException("Duplicate hash " + hashes[i]);
+      }
+    }
+    ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + count * ENTRY_SIZE);
+    buffer.putInt(MAGIC);
+    buffer.putInt(VERSION);
+    buffer.putInt(kind);
+    buffer.putInt(0);
+    buffer.putLong(count);
+    for (int i = 0; i < count; ++i) {
+      buffer.putLong(hashes[i]);
+      buffer.putLong(values[i]);
+    }
+    buffer.flip();
+    File directory = file.getAbsoluteFile().getParentFile();
+    File temporary = File.createTempFile(file.getName(), ".tmp", directory);
+    try {
+      try (RandomAccessFile output = new RandomAccessFile(temporary, "rw");
+          FileChannel channel = output.getChannel()) {
+        while (buffer.hasRemaining()) {
+          channel.write(buffer);
+        }
+        channel.force(true);
+      }
+      Files.move(temporary.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE);
+    } finally {
+      Files.deleteIfExists(temporary.toPath());
+    }
+  }
+
+  /**
+   * Writes the solved positions in a {@link Tablebase} to a table file of
+   * kind {@link MappedTable#KIND_TABLEBASE}, atomically replacing any
+   * existing file. The value of each entry is its packed
+   * tablebase value. Positions with an outcome of {@link Tablebase#UNKNOWN}
+   * are omitted.
+   *
+   * @param file File to write.
+   * @param tablebase Tablebase to write.
+   * @throws IOException If the file cannot be written.
+   */
+  public static void write(File file, Tablebase tablebase) throws IOException {
+    long[] hashes = new long[tablebase.size()];
+    long[] values = new long[tablebase.size()];
+    int count = 0;
+    for (int slot = 0; slot < tablebase.numSlots(); ++slot) {
+      int value = tablebase.getValue(slot);
+      if (value != Tablebase.NOT_FOUND && Tablebase.outcome(value) != Tablebase.UNKNOWN) {
+        hashes[count] = tablebase.getHash(slot);
+        values[count] = value;
+        count++;
+      }
+    }
+    write(file, KIND_TABLEBASE, hashes, values, count);
+  }
+
+  /**
+   * @return The kind of table in this file, such as
+   *     {@link MappedTable#KIND_TABLEBASE}.
+   */
+  public int getKind() {
+    return kind;
+  }
+
+  /**
+   * @return The number of entries in the table.
+   */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * @param hash A state hash.
+   * @return True if the table contains an entry for this hash.
+   */
+  public boolean contains(long hash) {
+    return indexOf(hash) >= 0;
+  }
+
+  /**
+   * @param hash A state hash.
+   * @param defaultValue Value to return if there is no entry for this hash.
+   * @return The value of the entry for this hash, or the default value if
+   *     there is none.
+   */
+  public long get(long hash, long defaultValue) {
+    int index = indexOf(hash);
+    return index < 0 ? defaultValue : buffer.getLong(HEADER_SIZE + index * ENTRY_SIZE + 8);
+  }
+
+  /**
+   * Copies every entry in the table into a map.
+   *
+   * @param map Map from hashes to values to copy the entries into.
+   */
+  void copyTo(Map<Long, Long> map) {
+    for (int i = 0; i < size; ++i) {
+      int offset = HEADER_SIZE + i * ENTRY_SIZE;
+      map.put(buffer.getLong(offset), buffer.getLong(offset + 8));
+    }
+  }
+
+  /**
+   * @param hash A state hash.
+   * @return The index of the entry for this hash, or -1 if there is none.
+   */
+  private int indexOf(long hash) {
+    int low = 0;
+    int high = size - 1;
+    while (low <= high) {
+      int middle = (low + high) >>> 1;
+      long middleHash = buffer.getLong(HEADER_SIZE + middle * ENTRY_SIZE);
+      if (middleHash < hash) {
+        low = middle + 1;
+      } else if (middleHash > hash) {
+        high = middle - 1;
+      } else {
+        return middle;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Heapsorts parallel arrays of hashes and values in ascending order of
+   * hash, without boxing either.
+   *
+   * @param hashes Hashes to sort by.
+   * @param values Values to reorder along with their hashes.
+   * @param count Number of entries to sort from the start of the arrays.
+   */
+  private static void sort(long[] hashes, long[] values, int count) {
+    for (int i = count / 2 - 1; i >= 0; --i) {
+      siftDown(hashes, values, i, count);
+    }
+    for (int end = count - 1; end > 0; --end) {
+      swap(hashes, values, 0, end);
+      siftDown(hashes, values, 0, end);
+    }
+  }
+
+  private static void siftDown(long[] hashes, long[] values, int root, int count) {
+    while (root * 2 + 1 < count) {
+      int child = root * 2 + 1;
+      if (child + 1 < count && hashes[child + 1] > hashes[child]) {
+        child++;
+      }
+      if (hashes[root] >= hashes[child]) {
+        return;
+      }
+      swap(hashes, values, root, child);
+      root = child;
+    }
+  }
+
+  private static void swap(long[] hashes, long[] values, int i, int j) {
+    long hash = hashes[i];
+    hashes[i] = hashes[j];
+    hashes[j] = hash;
+    long value = values[i];
+    values[i] = values[j];
+    values[j] = value;
+  }
+}
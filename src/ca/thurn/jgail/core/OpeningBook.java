@@ -0,0 +1,168 @@
+package ca.thurn.jgail.core;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A collection of statistics about the actions available in opening
+ * positions, accumulated from the root nodes of many searches. For each
+ * (position, action) pair the book records the total number of visits and
+ * total reward that searches from the position assigned to the action, so
+ * that statistics from searches in different games can be merged by
+ * addition. Positions are identified by {@link HashableState#hash()}.
+ *
+ * <p>A book can be saved as a {@link MappedTable}, and a saved book can be
+ * used as the starting point for a new book, which reads the saved
+ * statistics directly from the mapped file and only keeps statistics added
+ * since then in memory. Safe for use by multiple threads.
+ */
+public class OpeningBook {
+  // Statistics added since the book was loaded, packed by pack().
+  private final Map<Long, Long> added = new HashMap<Long, Long>();
+  // Null if the book was not loaded from a file.
+  private final MappedTable saved;
+
+  /**
+   * Constructs a new, empty OpeningBook.
+   */
+  public OpeningBook() {
+    this(null);
+  }
+
+  /**
+   * Constructs a new OpeningBook containing the statistics in a saved book.
+   *
+   * @param saved A table written by {@link OpeningBook#write(File)}, or
+   *     null for an empty book.
+   */
+  public OpeningBook(MappedTable saved) {
+    if (saved != null && saved.getKind() != MappedTable.KIND_OPENING_BOOK) {
+      throw new IllegalArgumentException("Not an opening book table: kind " + saved.getKind());
+    }
+    this.saved = saved;
+  }
+
+  /**
+   * Adds the results of searching a position to the book.
+   *
+   * @param hash The position's hash.
+   * @param action An action from the position.
+   * @param numVisits Number of visits the search made to this action.
+   * @param totalReward Total reward the search assigned to this action.
+   */
+  public synchronized void add(long hash, long action, int numVisits, double totalReward) {
+    long key = key(hash, action);
+    long packed = lookup(key);
+    added.put(key, pack(visits(packed) + numVisits, reward(packed) + totalReward));
+  }
+
+  /**
+   * Adds every statistic in another book to this book.
+   *
+   * @param other The book to merge into this book.
+   */
+  public void merge(OpeningBook other) {
+    Map<Long, Long> entries = other.entries();
+    synchronized (this) {
+      for (Map.Entry<Long, Long> entry : entries.entrySet()) {
+        long packed = lookup(entry.getKey());
+        added.put(entry.getKey(), pack(visits(packed) + visits(entry.getValue()),
+            reward(packed) + reward(entry.getValue())));
+      }
+    }
+  }
+
+  /**
+   * @param hash A position's hash.
+   * @param action An action from the position.
+   * @return The total number of visits recorded for this action.
+   */
+  public synchronized int getNumVisits(long hash, long action) {
+    return visits(lookup(key(hash, action)));
+  }
+
+  /**
+   * @param hash A position's hash.
+   * @param action An action from the position.
+   * @return The total reward recorded for this action.
+   */
+  public synchronized double getTotalReward(long hash, long action) {
+    return reward(lookup(key(hash, action)));
+  }
+
+  /**
+   * Saves this book, atomically replacing any existing file, which may be the
+   * file this book was loaded from.
+   *
+   * @param file File to write.
+   * @throws IOException If the file cannot be written.
+   */
+  public void write(File file) throws IOException {
+    Map<Long, Long> entries = entries();
+    long[] keys = new long[entries.size()];
+    long[] values = new long[entries.size()];
+    int count = 0;
+    for (Map.Entry<Long, Long> entry : entries.entrySet()) {
+      keys[count] = entry.getKey();
+      values[count] = entry.getValue();
+      count++;
+    }
+    MappedTable.write(file, MappedTable.KIND_OPENING_BOOK, keys, values, count);
+  }
+
+  /**
+   * @return A snapshot of every (key, packed statistics) pair in the book.
+   */
+  private synchronized Map<Long, Long> entries() {
+    Map<Long, Long> result = new HashMap<Long, Long>();
+    if (saved != null) {
+      saved.copyTo(result);
+    }
+    result.putAll(added);
+    return result;
+  }
+
+  /**
+   * @param key A (position, action) key.
+   * @return The packed statistics for this key, which are zero if there are
+   *     none.
+   */
+  private long lookup(long key) {
+    Long packed = added.get(key);
+    if (packed != null) {
+      return packed;
+    }
+    return saved == null ? 0L : saved.get(key, 0L);
+  }
+
+  /**
+   * @param hash A position's hash.
+   * @param action An action from the position.
+   * @return A key identifying this (position, action) pair.
+   */
+  private static long key(long hash, long action) {
+    long h = (action + 1) * 0x9E3779B97F4A7C15L;
+    return hash ^ h ^ (h >>> 29);
+  }
+
+  /**
+   * @param numVisits A number of visits.
+   * @param totalReward A total reward.
+   * @return These statistics packed into a long: the number of visits in the
+   *     high 32 bits, and the bits of the total reward as a float in the low
+   *     32 bits.
+   */
+  private static long pack(int numVisits, double totalReward) {
+    return ((long)numVisits << 32) | (Float.floatToIntBits((float)totalReward) & 0xFFFFFFFFL);
+  }
+
+  private static int visits(long packed) {
+    return (int)(packed >>> 32);
+  }
+
+  private static double reward(long packed) {
+    return Float.intBitsToFloat((int)packed);
+  }
+}
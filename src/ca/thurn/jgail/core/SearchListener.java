@@ -0,0 +1,48 @@
+package ca.thurn.jgail.core;
+
+/**
+ * Receives notifications about the progress of an agent's searches, for
+ * example to trace them. Notifications are made on the threads doing the
+ * search, so implementations must be thread safe and quick. To keep the cost
+ * of tracing low, agents do not report individual simulations, tree
+ * expansions or evaluator calls. Instead, they report iterations: each depth
+ * of iterative deepening, or each batch of
+ * {@link SearchListener#SIMULATIONS_PER_ITERATION} simulations run by a
+ * thread.
+ */
+public interface SearchListener {
+  /**
+   * Number of simulations in each iteration reported by agents which run
+   * simulations.
+   */
+  public static final int SIMULATIONS_PER_ITERATION = 1024;
+
+  /**
+   * Called when a search begins.
+   *
+   * @param agent The agent which is searching.
+   * @param root The root state of the search. Must not be modified.
+   */
+  public void searchStarted(Agent agent, State root);
+
+  /**
+   * Called when an iteration of a search completes.
+   *
+   * @param agent The agent which is searching.
+   * @param iteration The number of iterations completed so far by the thread
+   *     making this call, including this one.
+   * @param stats Statistics for the work done so far in this search by the
+   *     thread making this call. The maximum depth is the depth reached so
+   *     far.
+   */
+  public void iterationCompleted(Agent agent, int iteration, SearchStats stats);
+
+  /**
+   * Called when a search finishes.
+   *
+   * @param agent The agent which was searching.
+   * @param stats Statistics for the search, as returned by
+   *     {@link Instrumented#getLastSearchStats()}.
+   */
+  public void searchFinished(Agent agent, SearchStats stats);
+}
@@ -0,0 +1,311 @@
+package ca.thurn.jgail.core;
+
+import java.lang.management.ManagementFactory;
+
+/**
+ * Statistics describing the work done by one or more searches. Search agents
+ * count their work in plain fields owned by each search thread and only
+ * combine the counts into a SearchStats when a search finishes, so keeping
+ * statistics costs next to nothing and never causes contention between
+ * threads. SearchStats objects are immutable.
+ */
+public class SearchStats {
+
+  /**
+   * Statistics for no searches at all.
+   */
+  public static final SearchStats EMPTY = builder().build();
+
+  /**
+   * Builder for SearchStats.
+   */
+  public static class Builder {
+    private long numSearches = 0L;
+    private long numSimulations = 0L;
+    private long numNodes = 0L;
+    private int maxDepth = 0;
+    private long treeSize = 0L;
+    private long elapsedNanos = 0L;
+    private long allocatedBytes = 0L;
+    private long numCutoffs = 0L;
+    private long numEvaluations = 0L;
+
+    private Builder() {
+    }
+
+    /**
+     * @return A new SearchStats instance.
+     */
+    public SearchStats build() {
+      return new SearchStats(numSearches, numSimulations, numNodes, maxDepth, treeSize,
+          elapsedNanos, allocatedBytes, numCutoffs, numEvaluations);
+    }
+
+    /**
+     * @param numSearches Number of searches. Default value: 0.
+     * @return this.
+     */
+    public Builder setNumSearches(long numSearches) {
+      this.numSearches = numSearches;
+      return this;
+    }
+
+    /**
+     * @param numSimulations Number of simulated games played. Default value:
+     *     0.
+     * @return this.
+     */
+    public Builder setNumSimulations(long numSimulations) {
+      this.numSimulations = numSimulations;
+      return this;
+    }
+
+    /**
+     * @param numNodes Number of game states visited. Default value: 0.
+     * @return this.
+     */
+    public Builder setNumNodes(long numNodes) {
+      this.numNodes = numNodes;
+      return this;
+    }
+
+    /**
+     * @param maxDepth Greatest depth searched, in actions from the root state.
+     *     Default value: 0.
+     * @return this.
+     */
+    public Builder setMaxDepth(int maxDepth) {
+      this.maxDepth = maxDepth;
+      return this;
+    }
+
+    /**
+     * @param treeSize Number of game tree nodes created. Default value: 0.
+     * @return this.
+     */
+    public Builder setTreeSize(long treeSize) {
+      this.treeSize = treeSize;
+      return this;
+    }
+
+    /**
+     * @param elapsedNanos Wall clock time taken, in nanoseconds. Default
+     *     value: 0.
+     * @return this.
+     */
+    public Builder setElapsedNanos(long elapsedNanos) {
+      this.elapsedNanos = elapsedNanos;
+      return this;
+    }
+
+    /**
+     * @param allocatedBytes Number of bytes allocated by the search threads
+     *     while searching. Default value: 0.
+     * @return this.
+     */
+    public Builder setAllocatedBytes(long allocatedBytes) {
+      this.allocatedBytes = allocatedBytes;
+      return this;
+    }
+
+    /**
+     * @param numCutoffs Number of times part of the search was cut short.
+     *     Default value: 0.
+     * @return this.
+     */
+    public Builder setNumCutoffs(long numCutoffs) {
+      this.numCutoffs = numCutoffs;
+      return this;
+    }
+
+    /**
+     * @param numEvaluations Number of calls to the evaluator. Default value:
+     *     0.
+     * @return this.
+     */
+    public Builder setNumEvaluations(long numEvaluations) {
+      this.numEvaluations = numEvaluations;
+      return this;
+    }
+  }
+
+  /**
+   * @return A new Builder for SearchStats.
+   */
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  // Null if the JVM cannot measure the memory allocated by a thread.
+  private static final com.sun.management.ThreadMXBean THREAD_BEAN = threadBean();
+
+  private final long numSearches;
+  private final long numSimulations;
+  private final long numNodes;
+  private final int maxDepth;
+  private final long treeSize;
+  private final long elapsedNanos;
+  private final long allocatedBytes;
+  private final long numCutoffs;
+  private final long numEvaluations;
+
+  private SearchStats(long numSearches, long numSimulations, long numNodes, int maxDepth,
+      long treeSize, long elapsedNanos, long allocatedBytes, long numCutoffs,
+      long numEvaluations) {
+    this.numSearches = numSearches;
+    this.numSimulations = numSimulations;
+    this.numNodes = numNodes;
+    this.maxDepth = maxDepth;
+    this.treeSize = treeSize;
+    this.elapsedNanos = elapsedNanos;
+    this.allocatedBytes = allocatedBytes;
+    this.numCutoffs = numCutoffs;
+    this.numEvaluations = numEvaluations;
+  }
+
+  /**
+   * @return The number of bytes the calling thread has allocated since it
+   *     started, or 0 if the JVM cannot measure this. Search agents read
+   *     this before and after searching on each thread to estimate their
+   *     allocation.
+   */
+  public static long currentThreadAllocatedBytes() {
+    return THREAD_BEAN == null ? 0L :
+        THREAD_BEAN.getThreadAllocatedBytes(Thread.currentThread().getId());
+  }
+
+  /**
+   * @return The number of searches these statistics describe.
+   */
+  public long getNumSearches() {
+    return numSearches;
+  }
+
+  /**
+   * @return The number of simulated games played, by agents which play
+   *     them.
+   */
+  public long getNumSimulations() {
+    return numSimulations;
+  }
+
+  /**
+   * @return The number of game states visited, including the states visited
+   *     by simulations.
+   */
+  public long getNumNodes() {
+    return numNodes;
+  }
+
+  /**
+   * @return The greatest depth searched, in actions from the root state. For
+   *     agents which build a game tree, this is the depth of the deepest
+   *     node in the tree.
+   */
+  public int getMaxDepth() {
+    return maxDepth;
+  }
+
+  /**
+   * @return The number of game tree nodes created, by agents which build a
+   *     game tree.
+   */
+  public long getTreeSize() {
+    return treeSize;
+  }
+
+  /**
+   * @return The total wall clock time taken, in nanoseconds.
+   */
+  public long getElapsedNanos() {
+    return elapsedNanos;
+  }
+
+  /**
+   * @return An estimate of the number of bytes allocated while searching,
+   *     measured on each search thread, or 0 if the JVM cannot measure it.
+   *     Includes any allocation by other code which runs on those threads
+   *     during the search.
+   */
+  public long getAllocatedBytes() {
+    return allocatedBytes;
+  }
+
+  /**
+   * @return The number of times part of the search was cut short: alpha-beta
+   *     cutoffs for Negamax searches, and simulations stopped at the maximum
+   *     depth for searches which play simulations.
+   */
+  public long getNumCutoffs() {
+    return numCutoffs;
+  }
+
+  /**
+   * @return The number of calls to the evaluator.
+   */
+  public long getNumEvaluations() {
+    return numEvaluations;
+  }
+
+  /**
+   * @param other Statistics for other searches.
+   * @return Statistics describing both these searches and the other
+   *     searches. Counts are added, and the maximum depth is the greater of
+   *     the two.
+   */
+  public SearchStats plus(SearchStats other) {
+    return new SearchStats(numSearches + other.numSearches,
+        numSimulations + other.numSimulations,
+        numNodes + other.numNodes,
+        Math.max(maxDepth, other.maxDepth),
+        treeSize + other.treeSize,
+        elapsedNanos + other.elapsedNanos,
+        allocatedBytes + other.allocatedBytes,
+        numCutoffs + other.numCutoffs,
+        numEvaluations + other.numEvaluations);
+  }
+
+  /**
+   * @return The platform's thread bean, if it supports measuring the memory
+   *     allocated by a thread, or null.
+   */
+  private static com.sun.management.ThreadMXBean threadBean() {
+    try {
+      java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+      if (bean instanceof com.sun.management.ThreadMXBean) {
+        com.sun.management.ThreadMXBean result = (com.sun.management.ThreadMXBean)bean;
+        if (result.isThreadAllocatedMemorySupported() && result.isThreadAllocatedMemoryEnabled()) {
+          return result;
+        }
+      }
+    } catch (LinkageError e) {
+      // The com.sun.management API is not available on this platform.
+    }
+    return null;
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder builder = new StringBuilder();
+    builder.append("SearchStats [numSearches=");
+    builder.append(numSearches);
+    builder.append(", numSimulations=");
+    builder.append(numSimulations);
+    builder.append(", numNodes=");
+    builder.append(numNodes);
+    builder.append(", maxDepth=");
+    builder.append(maxDepth);
+    builder.append(", treeSize=");
+    builder.append(treeSize);
+    builder.append(", elapsedNanos=");
+    builder.append(elapsedNanos);
+    builder.append(", allocatedBytes=");
+    builder.append(allocatedBytes);
+    builder.append(", numCutoffs=");
+    builder.append(numCutoffs);
+    builder.append(", numEvaluations=");
+    builder.append(numEvaluations);
+    builder.append("]");
+    return builder.toString();
+  }
+}
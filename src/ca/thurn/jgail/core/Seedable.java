@@ -0,0 +1,17 @@
+package ca.thurn.jgail.core;
+
+/**
+ * Represents anything which makes random choices and can be made to make
+ * the same choices every time, by resetting its source of randomness to a
+ * fixed seed.
+ */
+public interface Seedable {
+  /**
+   * Resets this object's source of randomness. Two objects in the same
+   * condition which are given the same seed and then used identically must
+   * make identical random choices.
+   *
+   * @param seed The seed.
+   */
+  public void setSeed(long seed);
+}
@@ -0,0 +1,207 @@
+package ca.thurn.jgail.core;
+
+import java.util.Arrays;
+
+/**
+ * A table of solved game positions, keyed by {@link HashableState#hash()}.
+ * Each entry records the outcome of the position under perfect play, from
+ * the perspective of the player to move, along with its distance: the number
+ * of actions until the game ends when the winner wins as quickly as possible
+ * and the loser holds out as long as possible. Outcome and distance are
+ * packed into a single int, and entries are stored in flat primitive arrays
+ * which grow as needed. Not safe for use by multiple threads.
+ */
+public class Tablebase {
+
+  /**
+   * Value returned by {@link Tablebase#get(long)} when there is no entry for a
+   * hash.
+   */
+  public static final int NOT_FOUND = -1;
+
+  /**
+   * Outcome of a position whose value is not known.
+   */
+  public static final int UNKNOWN = 0;
+
+  /**
+   * Outcome of a position which the player to move wins.
+   */
+  public static final int WIN = 1;
+
+  /**
+   * Outcome of a position which the player to move loses.
+   */
+  public static final int LOSS = 2;
+
+  /**
+   * Outcome of a position which is drawn.
+   */
+  public static final int DRAW = 3;
+
+  private static final int DEFAULT_CAPACITY = 1024;
+  private static final int OUTCOME_BITS = 2;
+  private static final int OUTCOME_MASK = (1 << OUTCOME_BITS) - 1;
+
+  private long[] hashes;
+  // Packed values, or NOT_FOUND for an empty slot. Always at most half full.
+  private int[] values;
+  private int size;
+
+  /**
+   * Constructs a new, empty Tablebase.
+   */
+  public Tablebase() {
+    this(DEFAULT_CAPACITY);
+  }
+
+  /**
+   * Constructs a new, empty Tablebase.
+   *
+   * @param initialCapacity Number of entries to allocate space for up front.
+   */
+  public Tablebase(int initialCapacity) {
+    int numSlots = Integer.highestOneBit(Math.max(initialCapacity - 1, 1)) << 2;
+    hashes = new long[numSlots];
+    values = new int[numSlots];
+    clear();
+  }
+
+  /**
+   * @param outcome One of {@link Tablebase#WIN}, {@link Tablebase#LOSS},
+   *     {@link Tablebase#DRAW} or {@link Tablebase#UNKNOWN}.
+   * @param distance Number of actions until the end of the game. For unknown
+   *     positions, the depth to which the position was searched instead.
+   * @return The packed value of a position with this outcome and distance.
+   */
+  public static int pack(int outcome, int distance) {
+    return (distance << OUTCOME_BITS) | outcome;
+  }
+
+  /**
+   * @param value A packed value.
+   * @return The outcome of the position.
+   */
+  public static int outcome(int value) {
+    return value & OUTCOME_MASK;
+  }
+
+  /**
+   * @param value A packed value.
+   * @return The distance of the position.
+   */
+  public static int distance(int value) {
+    return value >>> OUTCOME_BITS;
+  }
+
+  /**
+   * Removes every entry from the table.
+   */
+  public void clear() {
+    Arrays.fill(values, NOT_FOUND);
+    size = 0;
+  }
+
+  /**
+   * @return The number of entries in the table.
+   */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * @param hash A state hash.
+   * @return The packed value stored for this hash, or
+   *     {@link Tablebase#NOT_FOUND} if there is none.
+   */
+  public int get(long hash) {
+    int slot = find(hash);
+    return values[slot];
+  }
+
+  /**
+   * Records the value of a position, replacing any previous value.
+   *
+   * @param hash The state's hash.
+   * @param value The position's packed value.
+   */
+  public void put(long hash, int value) {
+    int slot = find(hash);
+    if (values[slot] == NOT_FOUND) {
+      if ((size + 1) * 2 > values.length) {
+        grow();
+        slot = find(hash);
+      }
+      size++;
+      hashes[slot] = hash;
+    }
+    values[slot] = value;
+  }
+
+  /**
+   * @return The number of slots in the table, for iterating over its entries
+   *     with {@link Tablebase#getHash(int)} and {@link Tablebase#getValue(int)}.
+   */
+  public int numSlots() {
+    return values.length;
+  }
+
+  /**
+   * @param slot A slot index.
+   * @return The hash of the entry in this slot. Only meaningful if the slot
+   *     is not empty.
+   */
+  public long getHash(int slot) {
+    return hashes[slot];
+  }
+
+  /**
+   * @param slot A slot index.
+   * @return The packed value of the entry in this slot, or
+   *     {@link Tablebase#NOT_FOUND} if the slot is empty.
+   */
+  public int getValue(int slot) {
+    return values[slot];
+  }
+
+  /**
+   * @param hash A state hash.
+   * @return The slot containing this hash, or the empty slot where it would
+   *     be inserted.
+   */
+  private int find(long hash) {
+    int mask = values.length - 1;
+    int slot = mix(hash) & mask;
+    while (values[slot] != NOT_FOUND && hashes[slot] != hash) {
+      slot = (slot + 1) & mask;
+    }
+    return slot;
+  }
+
+  /**
+   * Doubles the number of slots in the table, preserving all entries.
+   */
+  private void grow() {
+    long[] oldHashes = hashes;
+    int[] oldValues = values;
+    hashes = new long[oldHashes.length * 2];
+    values = new int[oldValues.length * 2];
+    Arrays.fill(values, NOT_FOUND);
+    for (int slot = 0; slot < oldValues.length; ++slot) {
+      if (oldValues[slot] != NOT_FOUND) {
+        int newSlot = find(oldHashes[slot]);
+        hashes[newSlot] = oldHashes[slot];
+        values[newSlot] = oldValues[slot];
+      }
+    }
+  }
+
+  /**
+   * @param hash A state hash.
+   * @return A well-mixed hash code for this hash.
+   */
+  private static int mix(long hash) {
+    long h = hash * 0x9E3779B97F4A7C15L;
+    return (int)(h ^ (h >>> 32));
+  }
+}
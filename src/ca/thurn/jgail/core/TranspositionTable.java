@@ -0,0 +1,186 @@
+package ca.thurn.jgail.core;
+
+import java.util.Arrays;
+
+/**
+ * A fixed-size table of search results for states, keyed by
+ * {@link HashableState#hash()}. Each result records the depth it was
+ * searched to, its score, whether that score is exact or only a bound, and
+ * the best action found. Entries are stored in buckets of two: one slot is
+ * only replaced by results from searches at least as deep, and the other is
+ * always replaced, so that deep results survive while recent shallow results
+ * remain available. Entries are stored in flat primitive arrays, so the table
+ * performs no allocations after construction. Not safe for use by multiple
+ * threads.
+ *
+ * <p>The table can be kept across searches from different root states, since
+ * results are keyed by state rather than by their position in a search.
+ * Each entry records the generation it was stored in, and calling
+ * {@link TranspositionTable#newGeneration()} at the start of each search
+ * lets entries from earlier searches be replaced by shallower ones, so that
+ * deep results from positions which can no longer be reached do not occupy
+ * the table forever.
+ */
+public class TranspositionTable {
+
+  /**
+   * Index returned by {@link TranspositionTable#find(long)} when there is no
+   * entry for a hash.
+   */
+  public static final int NOT_FOUND = -1;
+
+  /**
+   * Flag for an entry whose score is the exact score of its state.
+   */
+  public static final int EXACT = 0;
+
+  /**
+   * Flag for an entry whose score is a lower bound on the score of its state,
+   * because the search of the state was cut off.
+   */
+  public static final int LOWER_BOUND = 1;
+
+  /**
+   * Flag for an entry whose score is an upper bound on the score of its
+   * state, because no action improved on the lower bound of the search.
+   */
+  public static final int UPPER_BOUND = 2;
+
+  private static final int EMPTY = -1;
+
+  private final long[] hashes;
+  private final int[] depths;
+  private final byte[] flags;
+  private final int[] generations;
+  private final double[] scores;
+  private final long[] actions;
+  private final int bucketMask;
+  private int generation;
+
+  /**
+   * Constructs a new, empty TranspositionTable.
+   *
+   * @param size Number of entries to allocate space for, which is rounded up
+   *     to a power of two.
+   */
+  public TranspositionTable(int size) {
+    int numBuckets = Integer.highestOneBit(Math.max(size - 1, 1));
+    hashes = new long[numBuckets * 2];
+    depths = new int[numBuckets * 2];
+    flags = new byte[numBuckets * 2];
+    generations = new int[numBuckets * 2];
+    scores = new double[numBuckets * 2];
+    actions = new long[numBuckets * 2];
+    bucketMask = numBuckets - 1;
+    clear();
+  }
+
+  /**
+   * Removes every entry from the table.
+   */
+  public void clear() {
+    Arrays.fill(depths, EMPTY);
+  }
+
+  /**
+   * Starts a new generation of entries. Entries stored before this call can
+   * be replaced by any new entry, regardless of depth, but remain available
+   * until they are. The generation counter wraps around after 2^32 calls, so
+   * an entry which survives exactly that many searches unreplaced is treated
+   * as current again, which only affects which entries get replaced.
+   */
+  public void newGeneration() {
+    generation++;
+  }
+
+  /**
+   * @return The number of entries the table can hold.
+   */
+  public int capacity() {
+    return hashes.length;
+  }
+
+  /**
+   * @param hash A state hash.
+   * @return The index of the entry for this hash, or
+   *     {@link TranspositionTable#NOT_FOUND} if there is none.
+   */
+  public int find(long hash) {
+    int slot = bucket(hash);
+    if (depths[slot] != EMPTY && hashes[slot] == hash) {
+      return slot;
+    }
+    slot++;
+    if (depths[slot] != EMPTY && hashes[slot] == hash) {
+      return slot;
+    }
+    return NOT_FOUND;
+  }
+
+  /**
+   * Records the result of searching a state.
+   *
+   * @param hash The state's hash.
+   * @param depth The depth the state was searched to.
+   * @param flag One of {@link TranspositionTable#EXACT},
+   *     {@link TranspositionTable#LOWER_BOUND} or
+   *     {@link TranspositionTable#UPPER_BOUND}.
+   * @param score The score the search produced.
+   * @param action The best action found by the search, or -1 if none.
+   */
+  public void store(long hash, int depth, int flag, double score, long action) {
+    int slot = bucket(hash);
+    if (depths[slot] != EMPTY && hashes[slot] != hash && depths[slot] > depth &&
+        generations[slot] == generation) {
+      slot++;
+    }
+    hashes[slot] = hash;
+    depths[slot] = depth;
+    generations[slot] = generation;
+    flags[slot] = (byte)flag;
+    scores[slot] = score;
+    actions[slot] = action;
+  }
+
+  /**
+   * @param entry An entry index.
+   * @return The depth this entry's state was searched to.
+   */
+  public int getDepth(int entry) {
+    return depths[entry];
+  }
+
+  /**
+   * @param entry An entry index.
+   * @return Whether this entry's score is exact, a lower bound or an upper
+   *     bound.
+   */
+  public int getFlag(int entry) {
+    return flags[entry];
+  }
+
+  /**
+   * @param entry An entry index.
+   * @return The score of this entry's state.
+   */
+  public double getScore(int entry) {
+    return scores[entry];
+  }
+
+  /**
+   * @param entry An entry index.
+   * @return The best action found for this entry's state, or -1 if none.
+   */
+  public long getAction(int entry) {
+    return actions[entry];
+  }
+
+  /**
+   * @param hash A state hash.
+   * @return The index of the depth-preferred slot of the bucket for this
+   *     hash. The always-replace slot follows it.
+   */
+  private int bucket(long hash) {
+    return (int)((hash ^ (hash >>> 32)) & bucketMask) << 1;
+  }
+}
@@ -32,6 +32,14 @@ public class IngeniousHex {
    * @return A random hex color.
    */
   public static int randomHex() {
+    return randomHex(random);
+  }
+  
+  /**
+   * @param random Source of randomness to use.
+   * @return A random hex color.
+   */
+  public static int randomHex(Random random) {
     return values[random.nextInt(values.length)];
   }
   
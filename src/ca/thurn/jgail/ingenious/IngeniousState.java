@@ -1,25 +1,95 @@
 package ca.thurn.jgail.ingenious;
 
-import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collections;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
 import java.util.Random;
 
 import ca.thurn.jgail.core.Copyable;
+import ca.thurn.jgail.core.CopyableRandom;
 import ca.thurn.jgail.core.Evaluator;
+import ca.thurn.jgail.core.HashableState;
 import ca.thurn.jgail.core.Player;
+import ca.thurn.jgail.core.Seedable;
 import ca.thurn.jgail.core.State;
 
 /**
  * State class for the game Ingenious.
  */
-public class IngeniousState implements State {
+public class IngeniousState implements HashableState, Seedable {
   
   private static final int BOARD_SIZE = 11;
   private static final int HAND_SIZE = 6;
+  private static final int NUM_COLORS = 6;
+  // Length of score arrays, which are indexed by color.
+  private static final int SCORES_LENGTH = IngeniousHex.OFF_BOARD;
+  // The board is stored as a flat array with a border of OFF_BOARD cells on
+  // every side, so that walking off the edge never needs a bounds check.
+  private static final int STRIDE = BOARD_SIZE + 2;
+  private static final int NUM_CELLS = STRIDE * STRIDE;
+  // Partner value for cells which are not the first hex of any action.
+  private static final int NO_PARTNER = -1;
+  // Offsets between a cell and its neighbor in each direction, in the order
+  // NE, E, SE, SW, W, NW.
+  private static final int[] DIRECTION_OFFSETS =
+      {STRIDE - 1, STRIDE, 1, 1 - STRIDE, -STRIDE, -1};
+  // For each cell, the neighbors which may be its partner, in order of
+  // preference. See findPartner().
+  private static final int[][] PARTNER_CANDIDATES = new int[NUM_CELLS][];
+  static {
+    int[] none = new int[0];
+    Arrays.fill(PARTNER_CANDIDATES, none);
+    for (int x = 0; x < BOARD_SIZE; ++x) {
+      for (int y = 0; y < BOARD_SIZE; ++y) {
+        int[] candidates = new int[6];
+        int count = 0;
+        if (y - 1 > 0) {
+          candidates[count++] = cell(x, y - 1);
+        }
+        if (x + 1 < BOARD_SIZE && y - 1 > 0) {
+          candidates[count++] = cell(x + 1, y - 1);
+        }
+        if (x + 1 < BOARD_SIZE) {
+          candidates[count++] = cell(x + 1, y);
+        }
+        if (y + 1 < BOARD_SIZE) {
+          candidates[count++] = cell(x, y + 1);
+        }
+        if (x - 1 > 0 && y + 1 < BOARD_SIZE) {
+          candidates[count++] = cell(x - 1, y + 1);
+        }
+        if (x - 1 > 0) {
+          candidates[count++] = cell(x - 1, y);
+        }
+        PARTNER_CANDIDATES[cell(x, y)] = Arrays.copyOf(candidates, count);
+      }
+    }
+  }
+  
+  // Zobrist keys for hexes, indexed as [cell][hex]. The keys are generated
+  // from a fixed seed so that hashes are stable between runs.
+  private static final long[][] HEX_KEYS = new long[NUM_CELLS][IngeniousHex.OFF_BOARD + 1];
+  private static final long PLAYER_TWO_KEY;
+  private static final long SCORE_SEED;
+  // Keys for pieces in hands, indexed as [player][piece], where pieces fit in
+  // 8 bits. A hand can hold the same piece more than once, so its keys are
+  // added rather than xored.
+  private static final long[][] HAND_KEYS = new long[Player.PLAYER_TWO + 1][1 << 8];
+  static {
+    Random keyGenerator = new Random(0x5EED);
+    for (int x = 0; x < BOARD_SIZE; ++x) {
+      for (int y = 0; y < BOARD_SIZE; ++y) {
+        for (int hex = 0; hex <= IngeniousHex.OFF_BOARD; ++hex) {
+          HEX_KEYS[cell(x, y)][hex] = keyGenerator.nextLong();
+        }
+      }
+    }
+    PLAYER_TWO_KEY = keyGenerator.nextLong();
+    SCORE_SEED = keyGenerator.nextLong();
+    for (int player = Player.PLAYER_ONE; player <= Player.PLAYER_TWO; ++player) {
+      for (int piece = 0; piece < HAND_KEYS[player].length; ++piece) {
+        HAND_KEYS[player][piece] = keyGenerator.nextLong();
+      }
+    }
+  }
   
   /**
    * Direction on the game board.
@@ -28,6 +98,47 @@ public class IngeniousState implements State {
     NE, E, SE, SW, W, NW
   }
   
+  /**
+   * Iterates over the actions available in a state by scanning the cells of
+   * the board in order and combining each cell which has a partner with each
+   * piece in the current player's hand. Since undo() restores both the
+   * partners and the hand exactly, this is perform-tolerant without needing
+   * a snapshot of the actions.
+   */
+  private class IngeniousActionIterator implements State.ActionIterator {
+    private int cell = -1;
+    private int handIndex = HAND_SIZE;
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long nextAction() {
+      hasNextAction();
+      int partner = partners[cell];
+      return IngeniousAction.create(handForPlayer(currentPlayer)[handIndex++],
+          getX(cell), getY(cell), getX(partner), getY(partner));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean hasNextAction() {
+      if (handIndex < HAND_SIZE) {
+        return true;
+      }
+      for (int next = cell + 1; next < NUM_CELLS; ++next) {
+        if (partners[next] != NO_PARTNER) {
+          cell = next;
+          handIndex = 0;
+          return true;
+        }
+      }
+      return false;
+    }
+  }
+  
   /**
    * Evaluator which evaluates Ingenious game states by comparing the player's
    * lowest scoring color in the state, breaking ties by looking at the second
@@ -37,11 +148,9 @@ public class IngeniousState implements State {
     @Override
     public double evaluate(int player, State state) {
       IngeniousState ingeniousState = (IngeniousState)state;
-      List<Integer> scores = 
-          new ArrayList<Integer>(ingeniousState.scoresForPlayer(player).values());
-      Collections.sort(scores);
-      return (scores.get(0) * 1000000) + (scores.get(1) * 100000) + (scores.get(2) * 10000) +
-          (scores.get(3) * 1000) + (scores.get(4) * 100) + (scores.get(5) * 10);
+      int[] scores = ingeniousState.sortScores(player, ingeniousState.sortedScores1);
+      return (scores[0] * 1000000) + (scores[1] * 100000) + (scores[2] * 10000) +
+          (scores[3] * 1000) + (scores[4] * 100) + (scores[5] * 10);
     }
     
     public String toString() {
@@ -58,7 +167,7 @@ public class IngeniousState implements State {
     public double evaluate(int player, State state) {
       IngeniousState ingeniousState = (IngeniousState)state;
       int result = 0;
-      for (int score : ingeniousState.scoresForPlayer(player).values()) {
+      for (int score : ingeniousState.scoresForPlayer(player)) {
         result += score;
       }
       return result;
@@ -69,32 +178,57 @@ public class IngeniousState implements State {
     }
   }
   
-  private List<Long> actions;
-  // 11x11 board using the axial coordinate system
-  private int[][] board;
+  // 11x11 board using the axial coordinate system, padded and flattened.
+  // Indexed by cell(x, y).
+  private int[] board;
+  // For each cell, the cell which it is paired with to form actions, or
+  // NO_PARTNER. See findPartner().
+  private int[] partners;
+  // The cells which have a partner, in no particular order, followed by
+  // unused space.
+  private int[] playableCells;
+  // The index of each cell in playableCells, if it is present.
+  private int[] playablePositions;
+  private int numPlayableCells;
   private int currentPlayer;
-  private List<Integer> p1Hand;
-  private List<Integer> p2Hand;
-  private Map<Integer, Integer> p1Score;
-  private Map<Integer, Integer> p2Score;
-  private final Random random = new Random();
+  private int[] p1Hand;
+  private int[] p2Hand;
+  // Scores indexed by color. Index 0 is unused and always 0.
+  private int[] p1Score;
+  private int[] p2Score;
+  // Scratch space for sorting scores without allocating.
+  private final int[] sortedScores1 = new int[NUM_COLORS];
+  private final int[] sortedScores2 = new int[NUM_COLORS];
+  // Zobrist hash of the board, the scores and the current player.
+  private long hash;
+  // Sum of the keys of the pieces in both hands.
+  private long handHash;
+  private final CopyableRandom random;
   
   /**
    * Null-initializing constructor.
    */
   public IngeniousState() {
+    this.random = new CopyableRandom();
   }
 
-  private IngeniousState(List<Long> actions, int[][] board,
-      int currentPlayer, List<Integer> p1Hand, List<Integer> p2Hand,
-      Map<Integer, Integer> p1Score, Map<Integer, Integer> p2Score) {
-    this.actions = actions;
+  private IngeniousState(int[] board, int[] partners, int[] playableCells,
+      int[] playablePositions, int numPlayableCells,
+      int currentPlayer, int[] p1Hand, int[] p2Hand, int[] p1Score, int[] p2Score,
+      long hash, long handHash, CopyableRandom random) {
+    this.random = random;
     this.board = board;
+    this.partners = partners;
+    this.playableCells = playableCells;
+    this.playablePositions = playablePositions;
+    this.numPlayableCells = numPlayableCells;
     this.currentPlayer = currentPlayer;
     this.p1Hand = p1Hand;
     this.p2Hand = p2Hand;
     this.p1Score = p1Score;
     this.p2Score = p2Score;
+    this.hash = hash;
+    this.handHash = handHash;
   }
 
   /**
@@ -102,7 +236,7 @@ public class IngeniousState implements State {
    */
   @Override
   public State.ActionIterator getActionIterator() {
-    return new State.ActionIteratorFromIterable(actions);
+    return new IngeniousActionIterator();
   }
   
   /**
@@ -110,7 +244,11 @@ public class IngeniousState implements State {
    */
   @Override
   public long getRandomAction() {
-    return actions.get(random.nextInt(actions.size()));
+    int index = random.nextInt(numPlayableCells * HAND_SIZE);
+    int cell = playableCells[index / HAND_SIZE];
+    int partner = partners[cell];
+    return IngeniousAction.create(handForPlayer(currentPlayer)[index % HAND_SIZE],
+        getX(cell), getY(cell), getX(partner), getY(partner));
   }
 
   /**
@@ -119,23 +257,29 @@ public class IngeniousState implements State {
   @Override
   public long perform(long action) {
     // Perform move
-    board[IngeniousAction.getX1(action)][IngeniousAction.getY1(action)] = 
-        IngeniousPiece.getHex1(IngeniousAction.getPiece(action));
-    board[IngeniousAction.getX2(action)][IngeniousAction.getY2(action)] = 
-        IngeniousPiece.getHex2(IngeniousAction.getPiece(action));
+    board[cell1(action)] = IngeniousPiece.getHex1(IngeniousAction.getPiece(action));
+    board[cell2(action)] = IngeniousPiece.getHex2(IngeniousAction.getPiece(action));
+    hashHexes(action);
+    updatePartnersForAction(action);
     
     // Score points
     modifyScoresForAction(action, true /* addToScore */);    
     
-    // Update hand
-    List<Integer> hand = handForPlayer(currentPlayer);
-    hand.remove(new Integer(IngeniousAction.getPiece(action)));
+    // Update hand, replacing the piece in place so that undo() can restore
+    // the hand's order exactly.
+    int[] hand = handForPlayer(currentPlayer);
+    int slot = 0;
+    while (hand[slot] != IngeniousAction.getPiece(action)) {
+      slot++;
+    }
     int newPiece = randomPiece();
-    hand.add(newPiece);
+    hand[slot] = newPiece;
+    handHash += HAND_KEYS[currentPlayer][newPiece] -
+        HAND_KEYS[currentPlayer][IngeniousAction.getPiece(action)];
 
     currentPlayer = playerAfter(currentPlayer);
-    actions = allActions(handForPlayer(currentPlayer));
-    return newPiece;
+    hash ^= PLAYER_TWO_KEY;
+    return ((long)slot << 32) | newPiece;
   }
 
   /**
@@ -143,20 +287,24 @@ public class IngeniousState implements State {
    */
   @Override
   public void undo(long action, long undoToken) {
+    currentPlayer = playerBefore(currentPlayer);
+    hash ^= PLAYER_TWO_KEY;
+
     // Undo move
-    board[IngeniousAction.getX1(action)][IngeniousAction.getY1(action)] = 0;
-    board[IngeniousAction.getX2(action)][IngeniousAction.getY2(action)] = 0;
+    board[cell1(action)] = 0;
+    board[cell2(action)] = 0;
+    hashHexes(action);
+    updatePartnersForAction(action);
     
     // Un-score points
     modifyScoresForAction(action, false /* addToScore */);
     
     // Update hand
-    List<Integer> hand = handForPlayer(currentPlayer);
-    hand.remove(new Integer((int) undoToken));
-    hand.add(IngeniousAction.getPiece(action));
-    
-    currentPlayer = playerBefore(currentPlayer);
-    actions = allActions(handForPlayer(currentPlayer));
+    int[] hand = handForPlayer(currentPlayer);
+    int slot = (int)(undoToken >>> 32);
+    handHash += HAND_KEYS[currentPlayer][IngeniousAction.getPiece(action)] -
+        HAND_KEYS[currentPlayer][hand[slot]];
+    hand[slot] = IngeniousAction.getPiece(action);
   }
 
   /**
@@ -164,19 +312,42 @@ public class IngeniousState implements State {
    */
   @Override
   public State setToStartingConditions() {
-    this.board = new int[BOARD_SIZE][BOARD_SIZE];
+    this.board = new int[NUM_CELLS];
+    Arrays.fill(board, IngeniousHex.OFF_BOARD);
+    for (int x = 0; x < BOARD_SIZE; ++x) {
+      for (int y = 0; y < BOARD_SIZE; ++y) {
+        board[cell(x, y)] = 0;
+      }
+    }
     addInitialHexes(board);
     this.currentPlayer = Player.PLAYER_ONE;
-    List<Integer> currentHand = randomHand();
-    this.p1Hand = currentHand;
+    this.p1Hand = randomHand();
     this.p2Hand = randomHand();
-    p1Score = new HashMap<Integer, Integer>();
-    p2Score = new HashMap<Integer, Integer>();    
+    p1Score = new int[SCORES_LENGTH];
+    p2Score = new int[SCORES_LENGTH];
+    hash = 0L;
+    for (int x = 0; x < BOARD_SIZE; ++x) {
+      for (int y = 0; y < BOARD_SIZE; ++y) {
+        hash ^= HEX_KEYS[cell(x, y)][board[cell(x, y)]];
+      }
+    }
     for (int hex : IngeniousHex.allColors()) {
-      p1Score.put(hex, 0);
-      p2Score.put(hex, 0);
+      hash ^= scoreKey(Player.PLAYER_ONE, hex, 0) ^ scoreKey(Player.PLAYER_TWO, hex, 0);
+    }
+    handHash = 0L;
+    for (int i = 0; i < HAND_SIZE; ++i) {
+      handHash += HAND_KEYS[Player.PLAYER_ONE][p1Hand[i]] + HAND_KEYS[Player.PLAYER_TWO][p2Hand[i]];
+    }
+    partners = new int[NUM_CELLS];
+    Arrays.fill(partners, NO_PARTNER);
+    playableCells = new int[NUM_CELLS];
+    playablePositions = new int[NUM_CELLS];
+    numPlayableCells = 0;
+    for (int x = 0; x < BOARD_SIZE; ++x) {
+      for (int y = 0; y < BOARD_SIZE; ++y) {
+        updatePartner(cell(x, y));
+      }
     }
-    actions = allActions(currentHand);
     return this;
   }
 
@@ -185,12 +356,14 @@ public class IngeniousState implements State {
    */
   @Override
   public State copy() {
-    if (actions == null && board == null) {
+    if (board == null) {
       return new IngeniousState();
     }
-    return new IngeniousState(new ArrayList<Long>(actions), copyBoard(),
-        currentPlayer, new ArrayList<Integer>(p1Hand), new ArrayList<Integer>(p2Hand),
-        new HashMap<Integer, Integer>(p1Score), new HashMap<Integer, Integer>(p2Score));
+    return new IngeniousState(Arrays.copyOf(board, NUM_CELLS), Arrays.copyOf(partners, NUM_CELLS),
+        Arrays.copyOf(playableCells, NUM_CELLS), Arrays.copyOf(playablePositions, NUM_CELLS),
+        numPlayableCells, currentPlayer, Arrays.copyOf(p1Hand, HAND_SIZE), Arrays.copyOf(p2Hand, HAND_SIZE),
+        Arrays.copyOf(p1Score, SCORES_LENGTH), Arrays.copyOf(p2Score, SCORES_LENGTH), hash,
+        handHash, random.copy());
   }
 
   /**
@@ -199,19 +372,32 @@ public class IngeniousState implements State {
   @Override
   public State initializeFrom(Copyable state) {
     IngeniousState copy = (IngeniousState)state.copy();
-    this.actions = copy.actions;
     this.board = copy.board;
+    this.partners = copy.partners;
+    this.playableCells = copy.playableCells;
+    this.playablePositions = copy.playablePositions;
+    this.numPlayableCells = copy.numPlayableCells;
     this.currentPlayer = copy.currentPlayer;
     this.p1Hand = copy.p1Hand;
     this.p2Hand = copy.p2Hand;
     this.p1Score = copy.p1Score;
     this.p2Score = copy.p2Score;
-    if (p1Hand.size() > 6 || p2Hand.size() > 6) {
-      throw new RuntimeException();
-    }    
+    this.hash = copy.hash;
+    this.handHash = copy.handHash;
+    this.random.initializeFrom(copy.random);
     return this;
   }
 
+  /**
+   * {@inheritDoc} Copies of this state continue from the same point in this
+   * state's sequence of random choices, and must be given seeds of their own
+   * to make different choices.
+   */
+  @Override
+  public void setSeed(long seed) {
+    random.setSeed(seed);
+  }
+
   /**
    * {@inheritDoc}
    */
@@ -233,7 +419,7 @@ public class IngeniousState implements State {
    */
   @Override
   public boolean isTerminal() {
-    return actions.size() == 0;
+    return numPlayableCells == 0;
   }
 
   /**
@@ -249,15 +435,13 @@ public class IngeniousState implements State {
    */
   @Override
   public int getWinner() {
-    List<Integer> p1 = new ArrayList<Integer>(p1Score.values());
-    Collections.sort(p1);
-    List<Integer> p2 = new ArrayList<Integer>(p2Score.values());
-    Collections.sort(p2);
+    int[] p1 = sortScores(Player.PLAYER_ONE, sortedScores1);
+    int[] p2 = sortScores(Player.PLAYER_TWO, sortedScores2);
     
-    for (int i = 0; i < 6; ++i) {
-      if (p1.get(i) > p2.get(i)) {
+    for (int i = 0; i < NUM_COLORS; ++i) {
+      if (p1[i] > p2[i]) {
         return Player.PLAYER_ONE;
-      } else if (p2.get(i) > p1.get(i)) {
+      } else if (p2[i] > p1[i]) {
         return Player.PLAYER_TWO;
       }
     }
@@ -265,6 +449,15 @@ public class IngeniousState implements State {
     return 0;
   }
   
+  /**
+   * {@inheritDoc} The hash includes both players' hands, since they
+   * determine which actions are legal.
+   */
+  @Override
+  public long hash() {
+    return hash ^ handHash;
+  }
+  
   @Override
   public String actionToString(long action) {
     int piece = IngeniousAction.getPiece(action);
@@ -286,17 +479,39 @@ public class IngeniousState implements State {
   
   /**
    * @param player A player.
-   * @return Score map for this player.
+   * @return Score array for this player, indexed by color.
    */
-  private Map<Integer, Integer> scoresForPlayer(int player) {
+  private int[] scoresForPlayer(int player) {
     return player == Player.PLAYER_ONE ? p1Score : p2Score;
   }
   
   /**
+   * Copies a player's scores into the provided array and sorts them in
+   * ascending order.
+   *
    * @param player A player.
-   * @return Hand list for this player.
+   * @param result Array of length NUM_COLORS to store the scores in.
+   * @return The result array.
+   */
+  private int[] sortScores(int player, int[] result) {
+    int[] scores = scoresForPlayer(player);
+    for (int i = 0; i < NUM_COLORS; ++i) {
+      int score = scores[i + 1];
+      int j = i;
+      while (j > 0 && result[j - 1] > score) {
+        result[j] = result[j - 1];
+        j--;
+      }
+      result[j] = score;
+    }
+    return result;
+  }
+  
+  /**
+   * @param player A player.
+   * @return Hand array for this player.
    */  
-  private List<Integer> handForPlayer(int player) {
+  private int[] handForPlayer(int player) {
     return player == Player.PLAYER_ONE ? p1Hand : p2Hand;
   }
   
@@ -306,7 +521,7 @@ public class IngeniousState implements State {
    * @return The piece at the indicating index in this player's hand.
    */
   int getPiece(int player, int index) {
-    return handForPlayer(player).get(index);
+    return handForPlayer(player)[index];
   }
   
   /**
@@ -316,78 +531,123 @@ public class IngeniousState implements State {
    *     location.
    */
   boolean isOpen(int x, int y) {
-    return board[x][y] == 0;
+    return board[cell(x, y)] == 0;
   }
 
   /**
-   * @param hand The current player's hand.
-   * @return A list of all actions possible from the current game state with
-   *     the provided hand.
+   * @param x X coordinate.
+   * @param y Y coordinate.
+   * @return The index of this location in the flattened board.
    */
-  private List<Long> allActions(List<Integer> hand) {
-    List<Long> result = new ArrayList<Long>(300);
-    for (int x = 0; x < BOARD_SIZE; ++x) {
-      for (int y = 0; y < BOARD_SIZE; ++y) {
-        if (board[x][y] == 0) {
-          addActionsForPosition(hand, result, x, y);
-        }
+  private static int cell(int x, int y) {
+    return (x + 1) * STRIDE + y + 1;
+  }
+  
+  /**
+   * @param cell A cell index.
+   * @return The X coordinate of this cell.
+   */
+  private static int getX(int cell) {
+    return cell / STRIDE - 1;
+  }
+  
+  /**
+   * @param cell A cell index.
+   * @return The Y coordinate of this cell.
+   */
+  private static int getY(int cell) {
+    return cell % STRIDE - 1;
+  }
+  
+  /**
+   * @param action An action.
+   * @return The cell the action's first hex is placed on.
+   */
+  private static int cell1(long action) {
+    return cell(IngeniousAction.getX1(action), IngeniousAction.getY1(action));
+  }
+  
+  /**
+   * @param action An action.
+   * @return The cell the action's second hex is placed on.
+   */
+  private static int cell2(long action) {
+    return cell(IngeniousAction.getX2(action), IngeniousAction.getY2(action));
+  }
+
+  /**
+   * Each open cell forms actions with at most one other cell, its "partner",
+   * which is its first open neighbor in the order NW, NE, E, SE, SW, W.
+   * Neighbors in the first row or column are never partners for the NW, SW
+   * and W directions. Actions consist of placing a piece from the current
+   * player's hand on a cell and its partner.
+   *
+   * @param cell A cell index.
+   * @return The partner of this cell, or NO_PARTNER if it is not open or has
+   *     no open neighbors.
+   */
+  private int findPartner(int cell) {
+    if (board[cell] != 0) {
+      return NO_PARTNER;
+    }
+    for (int candidate : PARTNER_CANDIDATES[cell]) {
+      if (board[candidate] == 0) {
+        return candidate;
       }
     }
-    return result;
+    return NO_PARTNER;
   }
   
   /**
-   * Adds all possible actions at the provided board position to the action list.
+   * Recomputes the partner of a cell, adding it to or removing it from
+   * playableCells as required.
    *
-   * @param hand The current player's hand.
-   * @param list The action list.
-   * @param x X coordinate.
-   * @param y Y coordinate.
-   */
-  private void addActionsForPosition(List<Integer> hand, List<Long> list,
-      int x, int y) {
-    if (y - 1 > 0 && y - 1 < BOARD_SIZE && board[x][y - 1] == 0) {
-      addActionsForMove(hand, list, x, y, x, y - 1);
-    } else if (x + 1 > 0 && x + 1 < BOARD_SIZE && y - 1 > 0 && y - 1 < BOARD_SIZE &&
-        board[x + 1][y - 1] == 0) {
-      addActionsForMove(hand, list, x, y, x + 1, y - 1);
-    } else if (x + 1 > 0 && x + 1 < BOARD_SIZE && board[x + 1][y] == 0) {
-      addActionsForMove(hand, list, x, y, x + 1, y);
-    } else if (y + 1 > 0 && y + 1 < BOARD_SIZE && board[x][y + 1] == 0) {
-      addActionsForMove(hand, list, x, y, x, y + 1);
-    } else if (x - 1 > 0 && x - 1 < BOARD_SIZE && y + 1 > 0 && y + 1 < BOARD_SIZE &&
-        board[x - 1][y + 1] == 0) {
-      addActionsForMove(hand, list, x, y, x - 1 , y + 1);
-    } else if (x - 1 > 0 && x - 1 < BOARD_SIZE && board[x - 1][y] == 0) {
-      addActionsForMove(hand, list, x, y, x - 1, y);
+   * @param cell A cell index.
+   */
+  private void updatePartner(int cell) {
+    int partner = findPartner(cell);
+    boolean wasPlayable = partners[cell] != NO_PARTNER;
+    partners[cell] = partner;
+    if (partner != NO_PARTNER && !wasPlayable) {
+      playablePositions[cell] = numPlayableCells;
+      playableCells[numPlayableCells++] = cell;
+    } else if (partner == NO_PARTNER && wasPlayable) {
+      int last = playableCells[--numPlayableCells];
+      playableCells[playablePositions[cell]] = last;
+      playablePositions[last] = playablePositions[cell];
     }
   }
   
   /**
-   * Add all possible actions involving providing a piece on the specified two
-   * hexes onto the board.
+   * Recomputes the partners of the cells affected by placing or removing the
+   * hexes of an action: the two cells themselves and their neighbors.
    *
-   * @param hand The current player's hand.
-   * @param list The action list.
-   * @param x1 First hex X coordinate.
-   * @param y1 First hex Y coordinate.
-   * @param x2 Second hex X coordinate.
-   * @param y2 Second hex Y coordinate.
-   */
-  private void addActionsForMove(List<Integer> hand, List<Long> list,
-      int x1, int y1, int x2, int y2) {
-    for (int i = 0; i < hand.size(); ++i) {
-      list.add(IngeniousAction.create(hand.get(i), x1, y1, x2, y2));
+   * @param action An action which has just been performed or undone.
+   */
+  private void updatePartnersForAction(long action) {
+    updatePartnersAround(cell1(action));
+    updatePartnersAround(cell2(action));
+  }
+  
+  /**
+   * Recomputes the partners of a cell and of each of its neighbors.
+   *
+   * @param cell A cell index.
+   */
+  private void updatePartnersAround(int cell) {
+    updatePartner(cell);
+    for (int offset : DIRECTION_OFFSETS) {
+      updatePartner(cell + offset);
     }
   }
   
   /**
    * @return A randomly generated hand of pieces.
    */
-  private List<Integer> randomHand() {
-    List<Integer> hand = new ArrayList<Integer>(HAND_SIZE);
+  private int[] randomHand() {
+    int[] hand = new int[HAND_SIZE];
     for (int i = 0; i < HAND_SIZE; ++i) {
-      hand.add(randomPiece());
+      hand[i] = randomPiece();
     }
     return hand;
   }
@@ -396,7 +656,7 @@ public class IngeniousState implements State {
    * @return A randomly generated piece.
    */
   private int randomPiece() {
-    return IngeniousPiece.create(IngeniousHex.randomHex(), IngeniousHex.randomHex());
+    return IngeniousPiece.create(IngeniousHex.randomHex(random), IngeniousHex.randomHex(random));
   }
   
   /**
@@ -406,58 +666,47 @@ public class IngeniousState implements State {
    *
    * @param board The board.
    */
-  private void addInitialHexes(int[][] board) {
-    board[0][0] = IngeniousHex.OFF_BOARD;
-    board[0][1] = IngeniousHex.OFF_BOARD;
-    board[0][2] = IngeniousHex.OFF_BOARD;
-    board[0][3] = IngeniousHex.OFF_BOARD;
-    board[0][4] = IngeniousHex.OFF_BOARD;
-    board[1][0] = IngeniousHex.OFF_BOARD;
-    board[1][1] = IngeniousHex.OFF_BOARD;
-    board[1][2] = IngeniousHex.OFF_BOARD;
-    board[1][3] = IngeniousHex.OFF_BOARD;
-    board[2][0] = IngeniousHex.OFF_BOARD;
-    board[2][1] = IngeniousHex.OFF_BOARD;
-    board[2][2] = IngeniousHex.OFF_BOARD;
-    board[3][0] = IngeniousHex.OFF_BOARD;
-    board[3][1] = IngeniousHex.OFF_BOARD;
-    board[4][0] = IngeniousHex.OFF_BOARD;
+  private void addInitialHexes(int[] board) {
+    board[cell(0, 0)] = IngeniousHex.OFF_BOARD;
+    board[cell(0, 1)] = IngeniousHex.OFF_BOARD;
+    board[cell(0, 2)] = IngeniousHex.OFF_BOARD;
+    board[cell(0, 3)] = IngeniousHex.OFF_BOARD;
+    board[cell(0, 4)] = IngeniousHex.OFF_BOARD;
+    board[cell(1, 0)] = IngeniousHex.OFF_BOARD;
+    board[cell(1, 1)] = IngeniousHex.OFF_BOARD;
+    board[cell(1, 2)] = IngeniousHex.OFF_BOARD;
+    board[cell(1, 3)] = IngeniousHex.OFF_BOARD;
+    board[cell(2, 0)] = IngeniousHex.OFF_BOARD;
+    board[cell(2, 1)] = IngeniousHex.OFF_BOARD;
+    board[cell(2, 2)] = IngeniousHex.OFF_BOARD;
+    board[cell(3, 0)] = IngeniousHex.OFF_BOARD;
+    board[cell(3, 1)] = IngeniousHex.OFF_BOARD;
+    board[cell(4, 0)] = IngeniousHex.OFF_BOARD;
     
-    board[10][6] = IngeniousHex.OFF_BOARD;
-    board[10][7] = IngeniousHex.OFF_BOARD;
-    board[10][8] = IngeniousHex.OFF_BOARD;
-    board[10][9] = IngeniousHex.OFF_BOARD;
-    board[10][10] = IngeniousHex.OFF_BOARD;
-    board[9][7] = IngeniousHex.OFF_BOARD;
-    board[9][8] = IngeniousHex.OFF_BOARD;
-    board[9][9] = IngeniousHex.OFF_BOARD;
-    board[9][10] = IngeniousHex.OFF_BOARD;
-    board[8][8] = IngeniousHex.OFF_BOARD;
-    board[8][9] = IngeniousHex.OFF_BOARD;
-    board[8][10] = IngeniousHex.OFF_BOARD;
-    board[7][9] = IngeniousHex.OFF_BOARD;
-    board[7][10] = IngeniousHex.OFF_BOARD;
-    board[6][10] = IngeniousHex.OFF_BOARD;
+    board[cell(10, 6)] = IngeniousHex.OFF_BOARD;
+    board[cell(10, 7)] = IngeniousHex.OFF_BOARD;
+    board[cell(10, 8)] = IngeniousHex.OFF_BOARD;
+    board[cell(10, 9)] = IngeniousHex.OFF_BOARD;
+    board[cell(10, 10)] = IngeniousHex.OFF_BOARD;
+    board[cell(9, 7)] = IngeniousHex.OFF_BOARD;
+    board[cell(9, 8)] = IngeniousHex.OFF_BOARD;
+    board[cell(9, 9)] = IngeniousHex.OFF_BOARD;
+    board[cell(9, 10)] = IngeniousHex.OFF_BOARD;
+    board[cell(8, 8)] = IngeniousHex.OFF_BOARD;
+    board[cell(8, 9)] = IngeniousHex.OFF_BOARD;
+    board[cell(8, 10)] = IngeniousHex.OFF_BOARD;
+    board[cell(7, 9)] = IngeniousHex.OFF_BOARD;
+    board[cell(7, 10)] = IngeniousHex.OFF_BOARD;
+    board[cell(6, 10)] = IngeniousHex.OFF_BOARD;
     
-    board[0][10] = IngeniousHex.BLUE;
-    board[5][10] = IngeniousHex.GREEN;
-    board[10][5] = IngeniousHex.ORANGE;
-    board[10][0] = IngeniousHex.PURPLE;
-    board[5][0] = IngeniousHex.RED;
-    board[0][5] = IngeniousHex.YELLOW;
+    board[cell(0, 10)] = IngeniousHex.BLUE;
+    board[cell(5, 10)] = IngeniousHex.GREEN;
+    board[cell(10, 5)] = IngeniousHex.ORANGE;
+    board[cell(10, 0)] = IngeniousHex.PURPLE;
+    board[cell(5, 0)] = IngeniousHex.RED;
+    board[cell(0, 5)] = IngeniousHex.YELLOW;
   }
   
-  /**
-   * @return A copy of the current board.
-   */
-  private int[][] copyBoard() {
-    int[][] result = new int[BOARD_SIZE][BOARD_SIZE];
-    for (int i = 0; i < BOARD_SIZE; ++i) {
-      result[i] = Arrays.copyOf(board[i], BOARD_SIZE);
-    }
-    return result;
-  }
-
   /**
    * Either scores points for the provided action or un-scores points for the
    * provided action.
@@ -467,97 +716,87 @@ public class IngeniousState implements State {
    *     score. If false, subtract the points from their score.
    */
   private void modifyScoresForAction(long action, boolean addToScore) {
-    Map<Integer, Integer> myScores = scoresForPlayer(currentPlayer);
+    int[] myScores = scoresForPlayer(currentPlayer);
     int hex1 = IngeniousPiece.getHex1(IngeniousAction.getPiece(action));
     int hex2 = IngeniousPiece.getHex2(IngeniousAction.getPiece(action));
-    Direction exclude1 = 
-        hexDirection(IngeniousAction.getX1(action), IngeniousAction.getY1(action),
-            IngeniousAction.getX2(action), IngeniousAction.getY2(action));
-    Direction exclude2 =
-        hexDirection(IngeniousAction.getX2(action), IngeniousAction.getY2(action),
-            IngeniousAction.getX1(action), IngeniousAction.getY1(action));
-    int scoreForHex1 = scoreForHex(IngeniousAction.getX1(action),
-        IngeniousAction.getY1(action), hex1, exclude1);
-    int scoreForHex2 = scoreForHex(IngeniousAction.getX2(action),
-        IngeniousAction.getY2(action), hex2, exclude2);
+    int cell1 = cell1(action);
+    int cell2 = cell2(action);
+    int scoreForHex1 = scoreForHex(cell1, hex1, cell2 - cell1);
+    int scoreForHex2 = scoreForHex(cell2, hex2, cell1 - cell2);
     
     if (addToScore) {
-      myScores.put(hex1, myScores.get(hex1) + scoreForHex1);
-      myScores.put(hex2, myScores.get(hex2) + scoreForHex2);
+      setScore(myScores, hex1, myScores[hex1] + scoreForHex1);
+      setScore(myScores, hex2, myScores[hex2] + scoreForHex2);
     } else {
-      myScores.put(hex1, myScores.get(hex1) - scoreForHex1);
-      myScores.put(hex2, myScores.get(hex2) - scoreForHex2);      
+      setScore(myScores, hex1, myScores[hex1] - scoreForHex1);
+      setScore(myScores, hex2, myScores[hex2] - scoreForHex2);      
     }
   }
+  
+  /**
+   * Changes one of the current player's scores, updating the hash.
+   *
+   * @param scores The current player's score array.
+   * @param hex The color to change the score for.
+   * @param score The new score.
+   */
+  private void setScore(int[] scores, int hex, int score) {
+    hash ^= scoreKey(currentPlayer, hex, scores[hex]) ^ scoreKey(currentPlayer, hex, score);
+    scores[hex] = score;
+  }
+  
+  /**
+   * Toggles the hexes placed by the provided action in the hash.
+   *
+   * @param action An action which has just been performed or undone.
+   */
+  private void hashHexes(long action) {
+    int piece = IngeniousAction.getPiece(action);
+    long[] keys1 = HEX_KEYS[cell1(action)];
+    long[] keys2 = HEX_KEYS[cell2(action)];
+    hash ^= keys1[0] ^ keys1[IngeniousPiece.getHex1(piece)] ^
+        keys2[0] ^ keys2[IngeniousPiece.getHex2(piece)];
+  }
+  
+  /**
+   * @param player A player.
+   * @param hex A color.
+   * @param score A score for this player in this color.
+   * @return The Zobrist key for this score. Scores are unbounded, so keys
+   *     are computed by mixing the arguments instead of being looked up.
+   */
+  private static long scoreKey(int player, int hex, int score) {
+    long key = SCORE_SEED + ((long)player << 40 | (long)hex << 32 | (score & 0xFFFFFFFFL));
+    key = (key ^ (key >>> 30)) * 0xBF58476D1CE4E5B9L;
+    key = (key ^ (key >>> 27)) * 0x94D049BB133111EBL;
+    return key ^ (key >>> 31);
+  }
 
   
   /**
-   * Calculates the score for placing a hex.
+   * Calculates the score for placing a hex: one point for each hex of the
+   * same color in an unbroken line from it in each direction. The padding
+   * around the board ends every line, so no bounds checks are needed.
    * 
-   * @param x X coordinate of hex.
-   * @param y Y coordinate of hex.
+   * @param cell Cell the hex is placed on.
    * @param hex The hex being placed.
-   * @param excludeDirection A Direction in which score should NOT be counted.
-   *     This is used to enforce the rule that you can't score points in the
-   *     direction of a piece's sibling hex. 
-   * @return Total score for placing this hex at these coordinates.
+   * @param excludeOffset Offset of the direction in which score should NOT be
+   *     counted. This is used to enforce the rule that you can't score points
+   *     in the direction of a piece's sibling hex. 
+   * @return Total score for placing this hex on this cell.
    */
-  private int scoreForHex(int x, int y, int hex, Direction excludeDirection) {
+  private int scoreForHex(int cell, int hex, int excludeOffset) {
     int total = 0;
-    if (Direction.NE != excludeDirection) {
-      total += countInDirection(x + 1, y - 1, hex, Direction.NE);
-    }
-    if (Direction.E != excludeDirection) {
-      total += countInDirection(x + 1, y, hex, Direction.E);
-    }
-    if (Direction.SE != excludeDirection) {
-      total += countInDirection(x, y + 1, hex, Direction.SE);
-    }
-    if (Direction.SW != excludeDirection) {
-      total += countInDirection(x - 1, y + 1, hex, Direction.SW);
-    }
-    if (Direction.W != excludeDirection) {
-      total += countInDirection(x - 1, y, hex, Direction.W);
+    for (int offset : DIRECTION_OFFSETS) {
+      if (offset != excludeOffset) {
+        for (int next = cell + offset; board[next] == hex; next += offset) {
+          total++;
+        }
+      }
     }
-    if (Direction.NW != excludeDirection) {
-      total += countInDirection(x, y - 1, hex, Direction.NW);
-    }   
     return total;
   }
   
-  /**
-   * Counts hexes of the same color as the provided hex in the provided
-   * direction from the given start coordinates.
-   *
-   * @param x Starting X coordinate.
-   * @param y Starting Y coordinate.
-   * @param hex Hex whose color we are counting.
-   * @param direction Direction in which to count.
-   * @return The number of hexes in a line in the provided direction from the
-   *     given coordiantes.
-   */
-  private int countInDirection(int x, int y, int hex, Direction direction) {
-    if (x < 0 || y < 0 || x >= BOARD_SIZE || y >= BOARD_SIZE || board[x][y] == 0 ||
-        board[x][y] != hex) {
-      return 0;
-    }
-    switch (direction) {
-      case NE:
-        return 1 + countInDirection(x + 1, y - 1, hex, direction);
-      case E:
-        return 1 + countInDirection(x + 1, y, hex, direction);
-      case SE:
-        return 1 + countInDirection(x, y + 1, hex, direction);
-      case SW:
-        return 1 + countInDirection(x - 1, y + 1, hex, direction);
-      case W:
-        return 1 + countInDirection(x - 1, y, hex, direction);
-      case NW:
-        return 1 + countInDirection(x, y - 1, hex, direction);
-    }
-    return 0;
-  }
-  
   /**
    * @param x1 First X coordinate.
    * @param y1 First Y coordinate.
@@ -596,10 +835,31 @@ public class IngeniousState implements State {
     }
   }
   
+  /**
+   * Two IngeniousStates are equal if they have the same hexes on the board,
+   * the same scores and the same current player. The players' hands are not
+   * compared, since they are refilled with random pieces which are not part
+   * of the position on the board. {@link IngeniousState#hash()} does include
+   * the hands, so equal states can have different hashes.
+   */
+  @Override
+  public boolean equals(Object object) {
+    if (this == object) return true;
+    if (!(object instanceof IngeniousState)) return false;
+    IngeniousState other = (IngeniousState)object;
+    return currentPlayer == other.currentPlayer && Arrays.equals(board, other.board) &&
+        Arrays.equals(p1Score, other.p1Score) && Arrays.equals(p2Score, other.p2Score);
+  }
+  
+  @Override
+  public int hashCode() {
+    return 31 * Arrays.hashCode(board) + currentPlayer;
+  }
+  
   @Override
   public String toString() {
     StringBuilder result = new StringBuilder();
-    result.append("\nNum Actions: " + actions.size() + "\n");
+    result.append("\nNum Actions: " + numPlayableCells * HAND_SIZE + "\n");
     scoresToString(result);
     boardToString(result);
     handsToString(result);
@@ -615,12 +875,12 @@ public class IngeniousState implements State {
     result.append("Scores:\n");
       result.append("Player 1:");
       for (int hex : IngeniousHex.allColors()) {
-        result.append(" " + IngeniousHex.toString(hex) + "=" + p1Score.get(hex));
+        result.append(" " + IngeniousHex.toString(hex) + "=" + p1Score[hex]);
       }
       result.append("\n");
       result.append("Player 2:");
       for (int hex : IngeniousHex.allColors()) {
-        result.append(" " + IngeniousHex.toString(hex) + "=" + p2Score.get(hex));
+        result.append(" " + IngeniousHex.toString(hex) + "=" + p2Score[hex]);
       }
       result.append("\n");
   }
@@ -635,7 +895,7 @@ public class IngeniousState implements State {
     for (int y = 0; y < BOARD_SIZE; ++y) {
       addSpaces(result, 2*Math.abs(5 - y));
       for (int x = 0; x < BOARD_SIZE; ++x) {
-        if (board[x][y] == 0) {
+        if (board[cell(x, y)] == 0) {
           if (x == 10) {
             result.append("[T" + y % 10 + "]");            
           } else if (y == 10) {
@@ -645,8 +905,8 @@ public class IngeniousState implements State {
           }
           
         } else {
-          if (board[x][y] != IngeniousHex.OFF_BOARD) {
-            result.append("[" + IngeniousHex.toString(board[x][y]) + "]");
+          if (board[cell(x, y)] != IngeniousHex.OFF_BOARD) {
+            result.append("[" + IngeniousHex.toString(board[cell(x, y)]) + "]");
           }
         }
       }
@@ -662,9 +922,9 @@ public class IngeniousState implements State {
   private void handsToString(StringBuilder result) {
     result.append("\nHand:\n");
     int pieceNumber = 0;
-    List<Integer> hand = handForPlayer(currentPlayer);
-    for (int i = 0; i < hand.size(); ++i) {
-      result.append(" " + pieceNumber + ") " + IngeniousPiece.toString(hand.get(i)));
+    int[] hand = handForPlayer(currentPlayer);
+    for (int i = 0; i < hand.length; ++i) {
+      result.append(" " + pieceNumber + ") " + IngeniousPiece.toString(hand[i]));
       pieceNumber++;
     }
   }
@@ -1,17 +1,16 @@
 package ca.thurn.jgail.tictactoe;
 
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Random;
-
 import ca.thurn.jgail.core.Copyable;
+import ca.thurn.jgail.core.CopyableRandom;
+import ca.thurn.jgail.core.HashableState;
 import ca.thurn.jgail.core.Player;
+import ca.thurn.jgail.core.Seedable;
 import ca.thurn.jgail.core.State;
 
 /**
  * State for a game of Tic Tac Toe.
  */
-public class TicTacToeState implements State {
+public class TicTacToeState implements HashableState, Seedable {
   // All possible winning lines for the players:
   private static final int[] WINNING_X_LINES = {
     0x1C0, 0x038, 0x007, // Horizontal
@@ -25,6 +24,69 @@ public class TicTacToeState implements State {
     }
   }
   
+  // Number of entries in the lookup tables, one for every combination of X
+  // and O bits. See tableIndex().
+  private static final int TABLE_SIZE = 1 << 18;
+  // The winner of every board.
+  private static final byte[] WINNERS = new byte[TABLE_SIZE];
+  // The empty positions of every board as a mask in the same format as X
+  // positions, or 0 if the game is over.
+  private static final short[] LEGAL_MOVES = new short[TABLE_SIZE];
+  static {
+    for (int index = 0; index < TABLE_SIZE; ++index) {
+      int board = (index & 0x1FF) | ((index & 0x3FE00) << 3);
+      int winner = computeWinner(board);
+      WINNERS[index] = (byte)winner;
+      if (winner == 0) {
+        LEGAL_MOVES[index] = (short)(~(board | (board >>> 12)) & 0x1FF);
+      }
+    }
+  }
+  // Actions indexed as [player][position].
+  private static final long[][] ACTIONS = new long[Player.PLAYER_TWO + 1][9];
+  static {
+    for (int i = 0; i < 9; ++i) {
+      ACTIONS[Player.PLAYER_ONE][i] = 0x0001 << i;
+      ACTIONS[Player.PLAYER_TWO][i] = 0x1000 << i;
+    }
+  }
+  
+  /**
+   * Iterates over a snapshot of the legal moves, so that it is unaffected by
+   * actions performed while it is in use.
+   */
+  private static class MoveIterator implements State.ActionIterator {
+    private final long[] actions;
+    private int remainingMoves;
+    
+    /**
+     * @param actions Actions for the current player, indexed by position.
+     * @param legalMoves Mask of the positions to iterate over.
+     */
+    MoveIterator(long[] actions, int legalMoves) {
+      this.actions = actions;
+      this.remainingMoves = legalMoves;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long nextAction() {
+      int position = Integer.numberOfTrailingZeros(remainingMoves);
+      remainingMoves &= remainingMoves - 1;
+      return actions[position];
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean hasNextAction() {
+      return remainingMoves != 0;
+    }
+  }
+  
   // Bit structure:
   // 0000A AAAA AAAA 000B BBBB BBBB
   // 00001 2345 6789 0001 2345 6789
@@ -36,19 +98,19 @@ public class TicTacToeState implements State {
   private int board;
   // X is always PLAYER_ONE, O is always PLAYER_TWO.
   private int currentPlayer;
-  private List<Long> actions;
-  private Random random = new Random();
+  private final CopyableRandom random;
   
   /**
    * Null-initializing constructor.
    */
   public TicTacToeState() {
+    this.random = new CopyableRandom();
   }
   
-  private TicTacToeState(int board, int currentPlayer, List<Long> actions) {
+  private TicTacToeState(int board, int currentPlayer, CopyableRandom random) {
+    this.random = random;
     this.board = board;
     this.currentPlayer = currentPlayer;
-    this.actions = actions;
   }
   
   /**
@@ -56,7 +118,7 @@ public class TicTacToeState implements State {
    */
   @Override
   public State.ActionIterator getActionIterator() {
-    return new State.ActionIteratorFromIterable(actions);
+    return new MoveIterator(ACTIONS[currentPlayer], LEGAL_MOVES[tableIndex()]);
   }
 
   /**
@@ -64,7 +126,11 @@ public class TicTacToeState implements State {
    */
   @Override
   public long getRandomAction() {
-    return actions.get(random.nextInt(actions.size()));
+    int moves = LEGAL_MOVES[tableIndex()];
+    for (int i = random.nextInt(Integer.bitCount(moves)); i > 0; --i) {
+      moves &= moves - 1;
+    }
+    return ACTIONS[currentPlayer][Integer.numberOfTrailingZeros(moves)];
   }
 
   /**
@@ -74,7 +140,6 @@ public class TicTacToeState implements State {
   public long perform(long action) {
     board |= action;
     currentPlayer = playerAfter(currentPlayer);
-    actions = allActions();
     return 0;
   }
 
@@ -85,7 +150,6 @@ public class TicTacToeState implements State {
   public void undo(long action, long undoToken) {
     board &= ~action;
     currentPlayer = playerBefore(currentPlayer);
-    actions = allActions();
   }
 
   /**
@@ -95,7 +159,6 @@ public class TicTacToeState implements State {
   public State setToStartingConditions() {
     board = 0;
     currentPlayer = Player.PLAYER_ONE;
-    actions = allActions();
     return this;
   }
 
@@ -104,10 +167,7 @@ public class TicTacToeState implements State {
    */
   @Override
   public State copy() {
-    if (actions == null) {
-      return new TicTacToeState();
-    }
-    return new TicTacToeState(board, currentPlayer, new ArrayList<Long>(actions));
+    return new TicTacToeState(board, currentPlayer, random.copy());
   }
 
   /**
@@ -118,20 +178,26 @@ public class TicTacToeState implements State {
     TicTacToeState copy = (TicTacToeState)state.copy();
     this.board = copy.board;
     this.currentPlayer = copy.currentPlayer;
-    this.actions = copy.actions;
+    this.random.initializeFrom(copy.random);
     return this;
   }
 
+  /**
+   * {@inheritDoc} Copies of this state continue from the same point in this
+   * state's sequence of random choices, and must be given seeds of their own
+   * to make different choices.
+   */
+  @Override
+  public void setSeed(long seed) {
+    random.setSeed(seed);
+  }
+
   /**
    * {@inheritDoc}
    */
   @Override
   public boolean isTerminal() {
-    if (Long.bitCount(board) >= 9) {
-      return true;
-    } else {
-      return getWinner() != 0;
-    }
+    return LEGAL_MOVES[tableIndex()] == 0;
   }
 
   /**
@@ -139,6 +205,14 @@ public class TicTacToeState implements State {
    */
   @Override
   public int getWinner() {
+    return WINNERS[tableIndex()];
+  }
+  
+  /**
+   * @param board A board.
+   * @return The winner of this board, or 0 if there is none.
+   */
+  private static int computeWinner(int board) {
     for (int i : WINNING_X_LINES) {
       if ((i & board) == i) {
         return Player.PLAYER_ONE;
@@ -152,6 +226,17 @@ public class TicTacToeState implements State {
     return 0;
   }
 
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public long hash() {
+    // The board and current player fit into 32 bits, so this is a perfect
+    // hash. Multiplying by an odd constant spreads the bits out without
+    // introducing collisions.
+    return (((long)currentPlayer << 24) | board) * 0x9E3779B97F4A7C15L;
+  }
+
   /**
    * {@inheritDoc}
    */
@@ -194,20 +279,28 @@ public class TicTacToeState implements State {
   }
   
   /**
-   * @return All actions currently possible in the game.
+   * @return The index of the current board in the lookup tables, formed by
+   *     packing the X bits and the O bits into 18 contiguous bits.
    */
-  private List<Long> allActions() {
-    List<Long> result = new ArrayList<Long>(9);
-    int action = getCurrentPlayer() == Player.PLAYER_ONE ? 0x0001 : 0x1000;
-    int other = getCurrentPlayer() == Player.PLAYER_ONE ? 0x1000 : 0x0001;
-    for (int i = 0; i < 9; ++i) {
-      if (((action & board) == 0) && ((other & board) == 0)) {
-        result.add((long)action);
-      }
-      action <<= 1;
-      other <<= 1;
-    }    
-    return result;
+  private int tableIndex() {
+    return (board & 0x1FF) | ((board >>> 3) & 0x3FE00);
+  }
+  
+  /**
+   * Two TicTacToeStates are equal if they have the same marks on the board
+   * and the same current player.
+   */
+  @Override
+  public boolean equals(Object object) {
+    if (this == object) return true;
+    if (!(object instanceof TicTacToeState)) return false;
+    TicTacToeState other = (TicTacToeState)object;
+    return board == other.board && currentPlayer == other.currentPlayer;
+  }
+  
+  @Override
+  public int hashCode() {
+    return 31 * board + currentPlayer;
   }
   
   public String toString() {